@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.io.Resources;
+
+/**
+ * Measures the load of all the resource trees of a discovery document from its bytes, parsing the whole
+ * document into a RestDescription or only reading its schemas with the streaming reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DiscoveryLoadBenchmark {
+	
+	@Param({"drive/v3/drive", "compute/v0.alpha/compute"})
+	private String api;
+	
+	private byte[] document;
+	
+	@Setup
+	public void setup() throws IOException {
+		document = Resources.toByteArray(Resources.getResource("googleapis/" + api + "-api.json"));
+	}
+	
+	@Benchmark
+	public ResourceTreeRepository fullParse() throws IOException {
+		try (InputStream inputStream = new ByteArrayInputStream(document)) {
+			RestDescription restDescription = Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class);
+			return ResourceTreeRepository.createEager(restDescription);
+		}
+	}
+	
+	@Benchmark
+	public ResourceTreeRepository streamingRead() throws IOException {
+		try (InputStream inputStream = new ByteArrayInputStream(document)) {
+			return ResourceTreeRepository.createEager(DiscoverySchemaReader.read(inputStream));
+		}
+	}
+	
+}
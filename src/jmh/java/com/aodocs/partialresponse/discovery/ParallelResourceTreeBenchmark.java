@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.DirectoryList;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.io.Resources;
+
+/**
+ * Measures the build of the resource trees of all the discovery documents listed in api-list.json,
+ * sequentially and with a fork-join pool of increasing parallelism.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParallelResourceTreeBenchmark {
+	
+	//0 builds each repository sequentially
+	@Param({"0", "1", "2", "4", "8"})
+	private int parallelism;
+	
+	private final List<RestDescription> restDescriptions = new ArrayList<>();
+	private ForkJoinPool pool;
+	
+	@Setup
+	public void setup() throws IOException {
+		DirectoryList directoryList;
+		try (InputStream inputStream = Resources.getResource("googleapis/api-list.json").openStream()) {
+			directoryList = Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(DirectoryList.class);
+		}
+		for (DirectoryList.Items item : directoryList.getItems()) {
+			String name = item.getName();
+			String resourceName = "googleapis/" + name + "/" + item.getVersion().replace("_", "/") + "/" + name + "-api.json";
+			if (ParallelResourceTreeBenchmark.class.getClassLoader().getResource(resourceName) != null) {
+				try (InputStream inputStream = Resources.getResource(resourceName).openStream()) {
+					restDescriptions.add(Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class));
+				}
+			}
+		}
+		pool = parallelism > 0 ? new ForkJoinPool(parallelism) : null;
+	}
+	
+	@TearDown
+	public void tearDown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+	
+	@Benchmark
+	public void createEager(Blackhole blackhole) {
+		for (RestDescription restDescription : restDescriptions) {
+			blackhole.consume(pool == null ? ResourceTreeRepository.createEager(restDescription)
+					: ResourceTreeRepository.createEager(restDescription, pool));
+		}
+	}
+	
+}
@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.DirectoryList;
+import com.google.common.io.Resources;
+
+/**
+ * Measures the heap retained by the resource trees of all the Google APIs of the test resources,
+ * as the used heap after a full GC while the trees are reachable, minus the used heap once they are released:
+ * caches filled by the load, such as the JSON parser symbols, are not counted.
+ * The time of the single shot only gives the order of magnitude of a full load, GCs included.
+ * A single measurement iteration is run, as JMH sums the counters of the iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+public class ResourceTreeMemoryBenchmark {
+	
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+	
+	private List<URL> documents;
+	//the trees are only reachable from this field while measured
+	private List<ResourceTreeRepository> loaded;
+	
+	/**
+	 * Reported with the benchmark results.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class RetainedMemory {
+		public long retainedBytes;
+		public long nodeCount;
+	}
+	
+	@Setup
+	public void setup() throws IOException {
+		try (InputStream inputStream = Resources.getResource("googleapis/api-list.json").openStream()) {
+			DirectoryList directoryList = Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(DirectoryList.class);
+			documents = new ArrayList<>();
+			for (DirectoryList.Items item : directoryList.getItems()) {
+				String name = "googleapis/" + item.getName() + "/" + item.getVersion().replace("_", "/") + "/" + item.getName() + "-api.json";
+				if (ResourceTreeMemoryBenchmark.class.getClassLoader().getResource(name) != null) {
+					documents.add(Resources.getResource(name));
+				}
+			}
+		}
+	}
+	
+	@Benchmark
+	public void loadAllApis(RetainedMemory retainedMemory) throws IOException {
+		loaded = loadAll(); //no local variable, it could keep the trees reachable once released
+		retainedMemory.nodeCount = loaded.stream().mapToLong(ResourceTreeRepository::getNodeCount).sum();
+		long withTrees = usedHeapAfterGc();
+		loaded = null;
+		retainedMemory.retainedBytes = withTrees - usedHeapAfterGc();
+	}
+	
+	private List<ResourceTreeRepository> loadAll() throws IOException {
+		List<ResourceTreeRepository> repositories = new ArrayList<>();
+		for (URL document : documents) {
+			ResourceTreeRepository repository = ResourceTreeRepository.load(document);
+			repository.loadAllRootNodes();
+			repositories.add(repository);
+		}
+		return repositories;
+	}
+	
+	private static long usedHeapAfterGc() {
+		for (int i = 0; i < 3; i++) {
+			System.gc(); //weakly referenced nodes and symbols are released by the first GC
+		}
+		return MEMORY.getHeapMemoryUsage().getUsed();
+	}
+	
+}
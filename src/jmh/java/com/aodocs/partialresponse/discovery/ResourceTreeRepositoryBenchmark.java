@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.io.Resources;
+
+/**
+ * Measures the build of all the resource trees of a discovery document, from an already parsed RestDescription.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResourceTreeRepositoryBenchmark {
+	
+	@Param({"drive/v3/drive", "compute/v1/compute", "youtube/v3/youtube"})
+	private String api;
+	
+	private RestDescription restDescription;
+	
+	@Setup
+	public void setup() throws IOException {
+		try (InputStream inputStream = Resources.getResource("googleapis/" + api + "-api.json").openStream()) {
+			restDescription = Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class);
+		}
+	}
+	
+	@Benchmark
+	public Collection<FieldsExpressionNode> loadAllRootNodes() {
+		return new ResourceTreeRepository(restDescription).loadAllRootNodes();
+	}
+	
+}
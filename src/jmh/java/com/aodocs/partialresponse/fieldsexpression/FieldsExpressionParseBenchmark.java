@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures FieldsExpression.parse with both parsers, on expressions of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FieldsExpressionParseBenchmark {
+	
+	@Param({"small", "medium", "large"})
+	private String size;
+	
+	@Param({"ANTLR", "RECURSIVE_DESCENT"})
+	private ParserType parserType;
+	
+	private String expression;
+	
+	@Setup
+	public void setup() {
+		switch (size) {
+			case "small":
+				expression = "items(id,title)";
+				break;
+			case "medium":
+				expression = "kind,nextPageToken,items(id,title,labels/starred,owners(displayName,emailAddress),parents/id),"
+						+ "files(id,name,mimeType,permissions(id,role,type),capabilities/*)";
+				break;
+			case "large":
+				expression = largeExpression(200);
+				break;
+			default:
+				throw new IllegalArgumentException(size);
+		}
+	}
+	
+	static String largeExpression(int fieldCount) {
+		StringBuilder builder = new StringBuilder("items(");
+		for (int i = 0; i < fieldCount; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append("field").append(i);
+			if (i % 4 == 0) {
+				builder.append("/sub").append(i).append("(a,b/c,*)");
+			}
+		}
+		return builder.append("),kind,nextPageToken").toString();
+	}
+	
+	@Benchmark
+	public FieldsExpression parse() {
+		return FieldsExpression.parse(expression, parserType);
+	}
+	
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.aodocs.partialresponse.discovery.LoadAllGoogleAPIsTest;
+import com.aodocs.partialresponse.discovery.ResourceTreeRepository;
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures FieldsExpression.isValidAgainst on all the schemas of the bundled googleapis discovery documents.
+ * Each schema is validated against an expression built from its own first two levels of fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FieldsExpressionValidationBenchmark {
+	
+	private final List<FieldsExpressionTree> schemas = Lists.newArrayList();
+	private final List<FieldsExpression> expressions = Lists.newArrayList();
+	
+	@Setup
+	public void setup() throws IOException {
+		for (URL url : LoadAllGoogleAPIsTest.createParams()) {
+			RestDescription restDescription;
+			try (InputStream inputStream = url.openStream()) {
+				restDescription = Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class);
+			}
+			if (restDescription.getSchemas() == null) {
+				continue;
+			}
+			ResourceTreeRepository repository = new ResourceTreeRepository(restDescription);
+			for (String schemaName : restDescription.getSchemas().keySet()) {
+				FieldsExpressionTree schema = repository.getResourceTree(schemaName);
+				String expression = buildExpression(schema.getRoot());
+				if (!expression.isEmpty()) {
+					schemas.add(schema);
+					expressions.add(FieldsExpression.parse(expression));
+				}
+			}
+		}
+	}
+	
+	private static String buildExpression(FieldsExpressionNode root) {
+		return childNames(root).stream().limit(8).map(name -> {
+			List<String> subNames = childNames(root.getChildMap().get(name));
+			return subNames.isEmpty() ? name : name + "(" + String.join(",", subNames.subList(0, Math.min(4, subNames.size()))) + ")";
+		}).collect(Collectors.joining(","));
+	}
+	
+	private static List<String> childNames(FieldsExpressionNode node) {
+		Map<String, FieldsExpressionNode> childMap;
+		try {
+			childMap = node.getChildMap();
+		} catch (IllegalArgumentException e) {
+			return Lists.newArrayList(); //duplicated names after a merge, skip this level
+		}
+		return childMap.keySet().stream()
+				.filter(name -> name.matches("[A-Za-z_][A-Za-z0-9_]*"))
+				.collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public void isValidAgainst(Blackhole blackhole) {
+		for (int i = 0; i < schemas.size(); i++) {
+			blackhole.consume(expressions.get(i).isValidAgainst(schemas.get(i)));
+		}
+	}
+	
+}
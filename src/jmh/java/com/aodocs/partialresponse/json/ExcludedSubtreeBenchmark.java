@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.filter.FilteringGeneratorDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Measures the filtering of a list whose items hold large excluded "metadata" subtrees,
+ * with the subtree skipping of AbstractFilteringGenerator and with a plain FilteringGeneratorDelegate
+ * using the same compiled filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExcludedSubtreeBenchmark {
+	
+	private static final int ITEM_COUNT = 100;
+	private static final int METADATA_SIZE = 50;
+	
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+	private final FieldsExpressionTree filterTree = FieldsExpression.parse("items(id,title)").getFilterTree();
+	private JsonNode document;
+	private byte[] input;
+	
+	@Setup
+	public void setup() throws IOException {
+		ObjectNode root = objectMapper.createObjectNode();
+		ArrayNode items = root.putArray("items");
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			ObjectNode item = items.addObject();
+			item.put("id", i);
+			item.put("title", "Item number " + i);
+			ObjectNode metadata = item.putObject("metadata");
+			for (int j = 0; j < METADATA_SIZE; j++) {
+				ObjectNode entry = metadata.putObject("key" + j);
+				entry.put("value", "value " + j);
+				entry.putArray("history").add(j).add(j + 1).add(j + 2);
+			}
+		}
+		document = root;
+		input = objectMapper.writeValueAsBytes(root);
+	}
+	
+	@Benchmark
+	public int writeSkipping() throws IOException {
+		output.reset();
+		try (JsonGenerator generator = new PartialResponseJsonGenerator(objectMapper.getFactory().createGenerator(output), filterTree)) {
+			objectMapper.writeTree(generator, document);
+		}
+		return output.size();
+	}
+	
+	@Benchmark
+	public int writeDelegate() throws IOException {
+		output.reset();
+		try (JsonGenerator generator = createDelegate()) {
+			objectMapper.writeTree(generator, document);
+		}
+		return output.size();
+	}
+	
+	@Benchmark
+	public int copySkipping() throws IOException {
+		output.reset();
+		try (JsonParser parser = objectMapper.getFactory().createParser(input);
+				JsonGenerator generator = new PartialResponseJsonGenerator(objectMapper.getFactory().createGenerator(output), filterTree)) {
+			parser.nextToken();
+			generator.copyCurrentStructure(parser);
+		}
+		return output.size();
+	}
+	
+	@Benchmark
+	public int copyDelegate() throws IOException {
+		output.reset();
+		try (JsonParser parser = objectMapper.getFactory().createParser(input);
+				JsonGenerator generator = createDelegate()) {
+			parser.nextToken();
+			generator.copyCurrentStructure(parser);
+		}
+		return output.size();
+	}
+	
+	private JsonGenerator createDelegate() throws IOException {
+		return new FilteringGeneratorDelegate(objectMapper.getFactory().createGenerator(output),
+				FilterAutomaton.compile(filterTree).getRootFilter(), true, true);
+	}
+	
+}
@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Measures the copy of JSON payloads through a PartialResponseJsonGenerator.
+ * Each payload is filtered with a narrow expression (few fields) and a wide one (most of the document).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PartialResponseJsonGeneratorBenchmark {
+	
+	private static final int ARRAY_SIZE = 10_000;
+	private static final int NESTING_DEPTH = 200;
+	
+	@Param({"small", "array10k", "nested"})
+	private String payload;
+	
+	@Param({"narrow", "wide"})
+	private String fields;
+	
+	private final JsonFactory jsonFactory = new JsonFactory();
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+	private byte[] input;
+	private FieldsExpressionTree filterTree;
+	private PartialResponseJsonFilter jsonFilter;
+	
+	@Setup
+	public void setup() throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+			switch (payload) {
+				case "small":
+					writeItem(generator, 0);
+					filterTree = filterTree("id,owner/email", "*");
+					break;
+				case "array10k":
+					generator.writeStartObject();
+					generator.writeStringField("kind", "list");
+					generator.writeArrayFieldStart("items");
+					for (int i = 0; i < ARRAY_SIZE; i++) {
+						writeItem(generator, i);
+					}
+					generator.writeEndArray();
+					generator.writeEndObject();
+					filterTree = filterTree("items(id,owner/email)", "kind,items(id,title,owner,tags)");
+					break;
+				case "nested":
+					for (int i = 0; i < NESTING_DEPTH; i++) {
+						generator.writeStartObject();
+						generator.writeNumberField("id", i);
+						generator.writeStringField("title", "level " + i);
+						generator.writeFieldName("child");
+					}
+					generator.writeNull();
+					for (int i = 0; i < NESTING_DEPTH; i++) {
+						generator.writeEndObject();
+					}
+					filterTree = filterTree("child/child/child/child/id", "id,child(id,title,child(id,title,child))");
+					break;
+				default:
+					throw new IllegalArgumentException(payload);
+			}
+		}
+		input = buffer.toByteArray();
+		jsonFilter = new PartialResponseJsonFilter(jsonFactory, filterTree);
+	}
+	
+	private FieldsExpressionTree filterTree(String narrow, String wide) {
+		return FieldsExpression.parse("narrow".equals(fields) ? narrow : wide).getFilterTree();
+	}
+	
+	private static void writeItem(JsonGenerator generator, int index) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("id", index);
+		generator.writeStringField("title", "Item number " + index);
+		generator.writeBooleanField("starred", index % 2 == 0);
+		generator.writeObjectFieldStart("owner");
+		generator.writeStringField("name", "Owner " + index);
+		generator.writeStringField("email", "owner" + index + "@example.com");
+		generator.writeEndObject();
+		generator.writeArrayFieldStart("tags");
+		generator.writeString("a");
+		generator.writeString("b");
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+	
+	@Benchmark
+	public int copy() throws IOException {
+		output.reset();
+		try (JsonParser parser = jsonFactory.createParser(input);
+				JsonGenerator generator = new PartialResponseJsonGenerator(jsonFactory.createGenerator(output), filterTree)) {
+			parser.nextToken();
+			generator.copyCurrentStructure(parser);
+		}
+		return output.size();
+	}
+	
+	@Benchmark
+	public int filter() throws IOException {
+		output.reset();
+		jsonFilter.filter(input, output);
+		return output.size();
+	}
+	
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.servlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+
+/**
+ * Measures RequestedFieldsImpl.isRequested, directly and through startingFrom.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RequestedFieldsBenchmark {
+	
+	private static final String[] PATHS = {
+			"kind", "items", "items/id", "items/title", "items/owners/emailAddress",
+			"items/labels/starred", "items/permissions/role", "nextPageToken", "unknown", "items/unknown/deep/path"
+	};
+	
+	@Param({"items(id,title,owners/emailAddress)", "*", "items/*/role,kind"})
+	private String fields;
+	
+	private RequestedFields requestedFields;
+	
+	@Setup
+	public void setup() {
+		requestedFields = new RequestedFieldsImpl(FieldsExpression.parse(fields));
+	}
+	
+	@Benchmark
+	public void isRequested(Blackhole blackhole) {
+		for (String path : PATHS) {
+			blackhole.consume(requestedFields.isRequested(path));
+		}
+	}
+	
+	@Benchmark
+	public void startingFromIsRequested(Blackhole blackhole) {
+		RequestedFields items = requestedFields.startingFrom("items");
+		blackhole.consume(items.isRequested("id"));
+		blackhole.consume(items.isRequested("owners/emailAddress"));
+		blackhole.consume(items.isRequested("unknown"));
+	}
+	
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.api.services.discovery.model.JsonSchema;
+import com.google.api.services.discovery.model.RestDescription;
+
+/**
+ * Reads a Discovery document with a streaming parser, keeping only what resource trees are built from:
+ * the API name and version, and the structure of the schemas ($ref, type, properties, additionalProperties
+ * and items). Resources, methods, parameters, descriptions and other schema attributes are skipped
+ * without being materialized.
+ */
+final class DiscoverySchemaReader {
+	
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	
+	private DiscoverySchemaReader() {
+	}
+	
+	/**
+	 * @param inputStream a Discovery document, not closed by this method
+	 * @return a description only holding the name, version and schemas of the API
+	 * @throws IOException if the document cannot be read
+	 */
+	static RestDescription read(InputStream inputStream) throws IOException {
+		RestDescription restDescription = new RestDescription();
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			expectStartObject(parser, parser.nextToken());
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken valueToken = parser.nextToken();
+				switch (fieldName) {
+					case "name":
+						restDescription.setName(parser.getValueAsString());
+						break;
+					case "version":
+						restDescription.setVersion(parser.getValueAsString());
+						break;
+					case "schemas":
+						expectStartObject(parser, valueToken);
+						restDescription.setSchemas(readSchemaMap(parser));
+						break;
+					default:
+						parser.skipChildren();
+						break;
+				}
+			}
+		}
+		return restDescription;
+	}
+	
+	private static Map<String, JsonSchema> readSchemaMap(JsonParser parser) throws IOException {
+		Map<String, JsonSchema> schemas = new LinkedHashMap<>();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonSchema schema = readSchema(parser, parser.nextToken());
+			if (schema != null) {
+				schemas.put(name, schema);
+			}
+		}
+		return schemas;
+	}
+	
+	/**
+	 * @return the schema, or null if the value is not an object
+	 */
+	private static JsonSchema readSchema(JsonParser parser, JsonToken token) throws IOException {
+		if (token != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return null;
+		}
+		JsonSchema schema = new JsonSchema();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken valueToken = parser.nextToken();
+			switch (fieldName) {
+				case "$ref":
+					schema.set$ref(parser.getValueAsString());
+					break;
+				case "type":
+					schema.setType(parser.getValueAsString());
+					break;
+				case "properties":
+					expectStartObject(parser, valueToken);
+					schema.setProperties(readSchemaMap(parser));
+					break;
+				case "additionalProperties":
+					schema.setAdditionalProperties(readSchema(parser, valueToken));
+					break;
+				case "items":
+					schema.setItems(readSchema(parser, valueToken));
+					break;
+				default:
+					parser.skipChildren(); //description, format, enum, annotations...
+					break;
+			}
+		}
+		return schema;
+	}
+	
+	private static void expectStartObject(JsonParser parser, JsonToken token) throws JsonParseException {
+		if (token != JsonToken.START_OBJECT) {
+			throw new JsonParseException(parser, "Expected an object but was " + token);
+		}
+	}
+	
+}
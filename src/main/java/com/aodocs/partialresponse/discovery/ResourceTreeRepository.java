@@ -21,88 +21,315 @@ package com.aodocs.partialresponse.discovery;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
 import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
-import com.google.api.client.googleapis.util.Utils;
-import com.google.api.client.json.JsonParser;
 import com.google.api.services.discovery.model.JsonSchema;
 import com.google.api.services.discovery.model.RestDescription;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
  * This class loads an API description in Discovery format, and returns FieldsExpressionTrees
  * for each resource (schemas) in it, describing all available fields for this resource.
  * The result is a FieldsExpressionTree, that can be used to check if another expression is contained.
+ *
+ * Instances are thread-safe. An eager repository ({@link #createEager}) builds all trees up front
+ * and is then read without locking. Once all trees are built, the Discovery schemas are no longer referenced,
+ * only the trees stay in memory, in the compact layout of {@link FieldsExpressionNode.Builder#compact}:
+ * identical subtrees are stored once, even across repositories (for instance several versions of an API).
  */
 public class ResourceTreeRepository {
 	
+	/**
+	 * Creates a lazy repository from a Discovery document. Only the schemas are read from the document.
+	 *
+	 * @param restDescriptionUrl the URL of the Discovery document
+	 * @return a lazy repository
+	 * @throws IOException if the document cannot be read
+	 */
 	public static ResourceTreeRepository load(URL restDescriptionUrl) throws IOException {
 		try (InputStream inputStream = restDescriptionUrl.openStream()) {
-			JsonParser jsonParser = Utils.getDefaultJsonFactory().createJsonParser(inputStream);
-			RestDescription restDescription = jsonParser.parse(RestDescription.class);
-			return new ResourceTreeRepository(restDescription);
+			return new ResourceTreeRepository(DiscoverySchemaReader.read(inputStream));
+		}
+	}
+	
+	/**
+	 * Builds the resource trees of all the schemas of the API, and returns a frozen repository
+	 * that can be read concurrently without any locking.
+	 *
+	 * @param restDescription the API description
+	 * @return a fully built repository
+	 */
+	public static ResourceTreeRepository createEager(RestDescription restDescription) {
+		ResourceTreeRepository repository = new ResourceTreeRepository(restDescription);
+		repository.loadAllRootNodes();
+		return repository;
+	}
+	
+	//released once all trees are built, guarded by buildLock
+	private Map<String, JsonSchema> schemas;
+	//only contains fully built nodes, replaced by an immutable map once all schemas are built
+	private volatile Map<String, FieldsExpressionNode> rootNodeCache = new ConcurrentHashMap<>();
+	private final Object buildLock = new Object();
+	//nodes of the current build, guarded by buildLock
+	private Map<String, FieldsExpressionNode> pendingRootNodes;
+	//nodes with $ref references of the current build, resolved once the build ends, guarded by buildLock
+	private List<FieldsExpressionNode.Builder> pendingReferences;
+	
+	/**
+	 * Builds the resource trees of all the schemas of the API concurrently, and returns a frozen repository.
+	 * Root nodes are created first, so that a $ref to a tree built by another task only needs its root node:
+	 * references are resolved once all trees are built, which also handles cycles between schemas.
+	 *
+	 * @param restDescription the API description
+	 * @param pool the pool running the build tasks, one per schema
+	 * @return a fully built repository, with the same trees as {@link #createEager(RestDescription)}
+	 */
+	public static ResourceTreeRepository createEager(RestDescription restDescription, ForkJoinPool pool) {
+		Map<String, JsonSchema> schemas = restDescription.getSchemas();
+		if (schemas == null) { // an API might have no resource at all
+			return new ResourceTreeRepository(ImmutableMap.of());
 		}
+		Map<String, FieldsExpressionNode.Builder> rootBuilders = schemas.keySet().stream().collect(
+				ImmutableMap.toImmutableMap(name -> name, name -> FieldsExpressionNode.Builder.createRoot()));
+		Map<String, FieldsExpressionNode> rootNodes = ImmutableMap.copyOf(
+				Maps.transformValues(rootBuilders, FieldsExpressionNode.Builder::getNode));
+		List<TreeBuildTask> tasks = schemas.entrySet().stream()
+				.map(schema -> new TreeBuildTask(schema.getValue(), rootBuilders.get(schema.getKey()), rootNodes))
+				.collect(Collectors.toList());
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		//all trees are complete, each task only resolves the references of its own tree
+		List<ForkJoinTask<?>> resolveTasks = tasks.stream()
+				.map(task -> ForkJoinTask.adapt(task::resolveReferences))
+				.collect(Collectors.toList());
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(resolveTasks)));
+		return new ResourceTreeRepository(rootNodes);
 	}
 	
-	private final Map<String, JsonSchema> schemas;
-	private final Map<String, FieldsExpressionNode> rootNodeCache = Maps.newHashMap();
+	/**
+	 * Reads a snapshot written by {@link #writeSnapshot}, without any Discovery document.
+	 *
+	 * @param inputStream the snapshot, not closed by this method
+	 * @return a fully built repository
+	 * @throws IOException if the snapshot cannot be read or is invalid
+	 */
+	public static ResourceTreeRepository readSnapshot(InputStream inputStream) throws IOException {
+		return new ResourceTreeRepository(ResourceTreeSnapshot.read(inputStream));
+	}
+	
+	private ResourceTreeRepository(Map<String, FieldsExpressionNode> rootNodes) {
+		this.rootNodeCache = ImmutableMap.copyOf(FieldsExpressionNode.Builder.compact(rootNodes));
+	}
 	
+	/**
+	 * Creates a lazy repository: resource trees are built on first access.
+	 * Concurrent accesses are safe, builds are serialized and only complete trees are published.
+	 *
+	 * @param restDescription the API description
+	 */
 	public ResourceTreeRepository(RestDescription restDescription) {
 		this.schemas = restDescription.getSchemas();
 	}
 	
+	/**
+	 * Builds all trees if needed, and writes them in a compact binary format, read by {@link #readSnapshot}.
+	 * Nodes shared between trees are written once.
+	 *
+	 * @param outputStream the output, not closed by this method
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeSnapshot(OutputStream outputStream) throws IOException {
+		loadAllRootNodes();
+		ResourceTreeSnapshot.write(rootNodeCache, outputStream);
+	}
+	
 	@VisibleForTesting
 	Collection<FieldsExpressionNode> loadAllRootNodes() {
-		if (schemas != null) { // an API might have no resource at all
-			for (String name : schemas.keySet()) {
-				getResourceTree(name);
+		synchronized (buildLock) {
+			if (!(rootNodeCache instanceof ImmutableMap)) {
+				if (schemas != null) { // an API might have no resource at all
+					build(schemas.keySet()); //a single build, so that nodes are compacted once
+				}
+				rootNodeCache = ImmutableMap.copyOf(rootNodeCache);
+				schemas = null;
 			}
 		}
 		return rootNodeCache.values();
 	}
 	
+	/**
+	 * Counts the distinct nodes of the trees built so far, nodes shared between trees being counted once.
+	 * This is an upper bound of the memory released with the repository, as nodes shared with other repositories are included.
+	 *
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		Set<FieldsExpressionNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<FieldsExpressionNode> toVisit = new ArrayDeque<>(rootNodeCache.values());
+		while (!toVisit.isEmpty()) {
+			FieldsExpressionNode node = toVisit.pop();
+			if (visited.add(node)) {
+				toVisit.addAll(node.getChildren());
+			}
+		}
+		return visited.size();
+	}
+	
+	/**
+	 * @param schemaName the name of a schema
+	 * @return true if the API has a schema with this name, {@link #getResourceTree} throwing IllegalArgumentException otherwise
+	 */
+	public boolean hasResourceTree(String schemaName) {
+		if (rootNodeCache.containsKey(schemaName)) {
+			return true;
+		}
+		synchronized (buildLock) {
+			return rootNodeCache.containsKey(schemaName) || (schemas != null && schemas.get(schemaName) != null);
+		}
+	}
+	
 	public FieldsExpressionTree getResourceTree(String schemaName) {
 		return new FieldsExpressionTree(getRootNode(schemaName));
 	}
 	
 	private FieldsExpressionNode getRootNode(String schemaName) {
 		FieldsExpressionNode rootNode = rootNodeCache.get(schemaName);
-		if (rootNode == null) {
-			Preconditions.checkArgument(schemas.get(schemaName) != null,
-					"Schema does not exist for resource " + schemaName);
-			rootNode = buildRootNode(schemaName, schemas.get(schemaName));
+		if (rootNode != null) {
+			return rootNode;
+		}
+		synchronized (buildLock) {
+			rootNode = rootNodeCache.get(schemaName);
+			if (rootNode == null && pendingRootNodes != null) {
+				rootNode = pendingRootNodes.get(schemaName); //reference from a tree being built
+			}
+			if (rootNode == null) {
+				Preconditions.checkArgument(schemas != null && schemas.get(schemaName) != null,
+						"Schema does not exist for resource " + schemaName);
+				if (pendingRootNodes != null) {
+					rootNode = buildRootNode(schemaName, schemas.get(schemaName)); //reference from the current build
+				} else {
+					rootNode = build(Collections.singleton(schemaName)).get(schemaName);
+				}
+			}
 		}
 		return rootNode;
 	}
 	
+	/**
+	 * Builds the trees of the schemas, and of the schemas they reference, that are not built yet.
+	 * Must be called with buildLock held.
+	 *
+	 * @param schemaNames the names of the schemas
+	 * @return the trees built
+	 */
+	private Map<String, FieldsExpressionNode> build(Collection<String> schemaNames) {
+		pendingRootNodes = Maps.newHashMap();
+		pendingReferences = Lists.newArrayList();
+		try {
+			for (String schemaName : schemaNames) {
+				if (!rootNodeCache.containsKey(schemaName) && !pendingRootNodes.containsKey(schemaName)) {
+					buildRootNode(schemaName, schemas.get(schemaName));
+				}
+			}
+			//all referenced trees are complete now
+			pendingReferences.forEach(FieldsExpressionNode.Builder::resolveReferences);
+			Map<String, FieldsExpressionNode> compactRootNodes = FieldsExpressionNode.Builder.compact(pendingRootNodes);
+			rootNodeCache.putAll(compactRootNodes); //publish the complete trees only
+			return compactRootNodes;
+		} finally {
+			pendingRootNodes = null;
+			pendingReferences = null;
+		}
+	}
+	
+	/**
+	 * Builds the tree of a schema, from its already created root node, and collects its $ref nodes.
+	 */
+	private static final class TreeBuildTask extends RecursiveAction {
+		
+		private final JsonSchema schema;
+		private final FieldsExpressionNode.Builder rootBuilder;
+		private final Map<String, FieldsExpressionNode> rootNodes;
+		private final List<FieldsExpressionNode.Builder> referenceBuilders = new ArrayList<>();
+		private final List<String> references = new ArrayList<>();
+		
+		TreeBuildTask(JsonSchema schema, FieldsExpressionNode.Builder rootBuilder, Map<String, FieldsExpressionNode> rootNodes) {
+			this.schema = schema;
+			this.rootBuilder = rootBuilder;
+			this.rootNodes = rootNodes;
+		}
+		
+		@Override
+		protected void compute() {
+			buildNode(rootBuilder, schema, (builder, $ref) -> {
+				Preconditions.checkArgument(rootNodes.containsKey($ref), "Schema does not exist for resource " + $ref);
+				referenceBuilders.add(builder);
+				references.add($ref);
+			});
+		}
+		
+		void resolveReferences() {
+			for (int i = 0; i < referenceBuilders.size(); i++) {
+				referenceBuilders.get(i).merge(rootNodes.get(references.get(i)));
+			}
+			referenceBuilders.forEach(FieldsExpressionNode.Builder::resolveReferences);
+		}
+		
+	}
+	
 	private FieldsExpressionNode buildRootNode(String name, JsonSchema schema) {
 		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.createRoot();
 		FieldsExpressionNode rootNode = builder.getNode();
-		rootNodeCache.put(name, rootNode); //cache before recursing to handle cycles
-		buildNode(builder, schema);
+		pendingRootNodes.put(name, rootNode); //cache before recursing to handle cycles
+		buildNode(builder, schema, (referenceBuilder, $ref) -> {
+			referenceBuilder.merge(getResourceTree($ref).getRoot());
+			pendingReferences.add(referenceBuilder);
+		});
 		return rootNode;
 	}
 	
-	private void buildNode(FieldsExpressionNode.Builder builder, JsonSchema schema) {
+	/**
+	 * @param builder the builder of the schema node
+	 * @param schema the schema
+	 * @param referenceHandler called with the builder of each $ref node and the referenced schema name
+	 */
+	private static void buildNode(FieldsExpressionNode.Builder builder, JsonSchema schema,
+			BiConsumer<FieldsExpressionNode.Builder, String> referenceHandler) {
 		Map<String, JsonSchema> properties = schema.getProperties();
 		JsonSchema additionalProperties = schema.getAdditionalProperties();
 		if (properties != null) {
 			for (Map.Entry<String, JsonSchema> propertyEntry : properties.entrySet()) {
-				buildChild(builder, propertyEntry.getKey(), propertyEntry.getValue());
+				buildChild(builder, propertyEntry.getKey(), propertyEntry.getValue(), referenceHandler);
 			}
 		}
 		if (additionalProperties != null) {
-			buildChild(builder, "*", additionalProperties);
+			buildChild(builder, "*", additionalProperties, referenceHandler);
 		}
 	}
 	
-	private void buildChild(FieldsExpressionNode.Builder parentBuilder, String childName, JsonSchema childSchema) {
+	private static void buildChild(FieldsExpressionNode.Builder parentBuilder, String childName, JsonSchema childSchema,
+			BiConsumer<FieldsExpressionNode.Builder, String> referenceHandler) {
 		FieldsExpressionNode.Builder builder = parentBuilder.getOrAddChild(childName);
 		
 		String $ref = childSchema.get$ref(); //schema reference
@@ -110,7 +337,7 @@ public class ResourceTreeRepository {
 		
 		if ($ref != null) {
 			Preconditions.checkState(type == null, "type must be null for $ref");
-			builder.merge(getResourceTree($ref).getRoot());
+			referenceHandler.accept(builder, $ref);
 			return;
 		}
 		
@@ -120,10 +347,10 @@ public class ResourceTreeRepository {
 				//bypass array level
 				buildChild(parentBuilder, childName,
 						Preconditions.checkNotNull(childSchema.getItems(),
-								"items must be present for array types"));
+								"items must be present for array types"), referenceHandler);
 				break;
 			case "object":
-				buildNode(builder, childSchema);
+				buildNode(builder, childSchema, referenceHandler);
 				break;
 			case "any":
 				builder.setCatchAllChild();
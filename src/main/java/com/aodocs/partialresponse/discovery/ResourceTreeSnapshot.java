@@ -0,0 +1,149 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+
+/**
+ * Binary format of the resource trees of a {@link ResourceTreeRepository}.
+ * 
+ * The trees are written as a graph: each distinct node is written once, with the indexes of its children,
+ * so nodes shared between trees and cycles of recursive schemas are preserved. Names are written once
+ * in a string table.
+ */
+final class ResourceTreeSnapshot {
+	
+	private static final int MAGIC = 0x50525453; //PRTS
+	private static final int VERSION = 1;
+	
+	private ResourceTreeSnapshot() {
+	}
+	
+	static void write(Map<String, FieldsExpressionNode> rootNodes, OutputStream outputStream) throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		Map<FieldsExpressionNode, Integer> nodeIndexes = new IdentityHashMap<>();
+		List<FieldsExpressionNode> nodes = new ArrayList<>();
+		List<Integer> nodeValues = new ArrayList<>();
+		for (Map.Entry<String, FieldsExpressionNode> root : rootNodes.entrySet()) {
+			strings.putIfAbsent(root.getKey(), strings.size());
+			addNode(root.getValue(), -1, nodeIndexes, nodes, nodeValues);
+		}
+		//nodes list grows while children are discovered
+		for (int i = 0; i < nodes.size(); i++) {
+			for (Map.Entry<String, FieldsExpressionNode> child : nodes.get(i).getChildMap().entrySet()) {
+				strings.putIfAbsent(child.getKey(), strings.size());
+				addNode(child.getValue(), strings.get(child.getKey()), nodeIndexes, nodes, nodeValues);
+			}
+		}
+		
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(strings.size());
+		for (String string : strings.keySet()) {
+			output.writeUTF(string);
+		}
+		output.writeInt(nodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			output.writeInt(nodeValues.get(i));
+			Map<String, FieldsExpressionNode> children = nodes.get(i).getChildMap();
+			output.writeInt(children.size());
+			for (FieldsExpressionNode child : children.values()) {
+				output.writeInt(nodeIndexes.get(child));
+			}
+		}
+		output.writeInt(rootNodes.size());
+		for (Map.Entry<String, FieldsExpressionNode> root : rootNodes.entrySet()) {
+			output.writeInt(strings.get(root.getKey()));
+			output.writeInt(nodeIndexes.get(root.getValue()));
+		}
+		output.flush();
+	}
+	
+	private static void addNode(FieldsExpressionNode node, int valueIndex,
+			Map<FieldsExpressionNode, Integer> nodeIndexes, List<FieldsExpressionNode> nodes, List<Integer> nodeValues) {
+		if (!nodeIndexes.containsKey(node)) {
+			nodeIndexes.put(node, nodes.size());
+			nodes.add(node);
+			nodeValues.add(valueIndex);
+		}
+	}
+	
+	static Map<String, FieldsExpressionNode> read(InputStream inputStream) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Not a resource tree snapshot");
+		}
+		int version = input.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported resource tree snapshot version " + version);
+		}
+		try {
+			return readRootNodes(input);
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid resource tree snapshot", e);
+		}
+	}
+	
+	private static Map<String, FieldsExpressionNode> readRootNodes(DataInputStream input) throws IOException {
+		String[] strings = new String[input.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = input.readUTF();
+		}
+		int nodeCount = input.readInt();
+		FieldsExpressionNode.Builder[] builders = new FieldsExpressionNode.Builder[nodeCount];
+		int[][] children = new int[nodeCount][];
+		for (int i = 0; i < nodeCount; i++) {
+			int valueIndex = input.readInt();
+			builders[i] = FieldsExpressionNode.Builder.createNode(valueIndex < 0 ? null : strings[valueIndex]);
+			children[i] = new int[input.readInt()];
+			for (int j = 0; j < children[i].length; j++) {
+				children[i][j] = input.readInt();
+			}
+		}
+		//children are linked once all nodes exist, as they can be referenced before being read
+		for (int i = 0; i < nodeCount; i++) {
+			for (int child : children[i]) {
+				builders[i].addChild(builders[child].getNode());
+			}
+		}
+		Map<String, FieldsExpressionNode> rootNodes = new LinkedHashMap<>();
+		int rootCount = input.readInt();
+		for (int i = 0; i < rootCount; i++) {
+			String name = strings[input.readInt()];
+			rootNodes.put(name, builders[input.readInt()].getNode());
+		}
+		return rootNodes;
+	}
+	
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.google.api.services.discovery.model.RestDescription;
+
+/**
+ * Compiles Discovery documents into resource tree snapshots, to be run at build time so that
+ * the resource trees are read from the classpath instead of being built from generated Discovery documents.
+ * 
+ * Usage: ResourceTreeSnapshotCompiler &lt;output directory&gt; &lt;Discovery document&gt;...
+ * 
+ * Each snapshot is named after the API name and version (see {@link #getSnapshotName}).
+ */
+public final class ResourceTreeSnapshotCompiler {
+	
+	/**
+	 * @param apiName the API name
+	 * @param apiVersion the API version
+	 * @return the file name of the snapshot of this API version
+	 */
+	public static String getSnapshotName(String apiName, String apiVersion) {
+		return apiName + "-" + apiVersion + ".trees";
+	}
+	
+	/**
+	 * @param restDescriptionFile a Discovery document
+	 * @param outputDirectory the directory where the snapshot is written
+	 * @return the snapshot file
+	 * @throws IOException if the document cannot be read or the snapshot cannot be written
+	 */
+	public static Path compile(Path restDescriptionFile, Path outputDirectory) throws IOException {
+		RestDescription restDescription;
+		try (InputStream inputStream = Files.newInputStream(restDescriptionFile)) {
+			restDescription = DiscoverySchemaReader.read(inputStream);
+		}
+		Path snapshotFile = outputDirectory.resolve(getSnapshotName(restDescription.getName(), restDescription.getVersion()));
+		try (OutputStream outputStream = Files.newOutputStream(snapshotFile)) {
+			ResourceTreeRepository.createEager(restDescription).writeSnapshot(outputStream);
+		}
+		return snapshotFile;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ResourceTreeSnapshotCompiler <output directory> <Discovery document>...");
+			System.exit(1);
+		}
+		Path outputDirectory = Files.createDirectories(Paths.get(args[0]));
+		for (int i = 1; i < args.length; i++) {
+			System.out.println("Compiled " + compile(Paths.get(args[i]), outputDirectory));
+		}
+	}
+	
+	private ResourceTreeSnapshotCompiler() {
+	}
+	
+}
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Read-only node of a compact tree, see {@link FieldsExpressionNode.Builder#compact}. Its value is interned
+ * by the {@link SymbolTable}, and its leaf, transitive leaf and wildcard or catch-all child flags are precomputed.
+ * 
+ * The children are stored in an array in insertion order, and the hash codes of their values in a parallel int array,
+ * followed by an open addressing index of the positions. Lookups probe the index, and only compare the values
+ * of the candidates having the same hash code. Most absent names, such as wildcards looked up on each schema node,
+ * are rejected by a one-word filter of the hash codes.
+ */
+final class CompactNode extends FieldsExpressionNode {
+	
+	private static final FieldsExpressionNode[] NO_CHILDREN = new FieldsExpressionNode[0];
+	private static final int[] NO_HASHES = new int[0];
+	
+	private FieldsExpressionNode[] children = NO_CHILDREN;
+	private int[] hashes = NO_HASHES;
+	//bit (hash & 31) is set for the hash code of each child value
+	private int hashFilter;
+	
+	/**
+	 * Creates a compact node, its children must be set by {@link #setChildren} before it is published.
+	 *
+	 * @param value the node value, null for a root node
+	 */
+	CompactNode(String value) {
+		super(value == null ? null : SymbolTable.intern(value));
+	}
+	
+	/**
+	 * Sets the children of the node, it is then read-only. Children might not have their own children yet (cycles).
+	 *
+	 * @param children the children, in order, the array is not copied
+	 */
+	void setChildren(FieldsExpressionNode[] children) {
+		int structureFlags = COMPACT | (children.length == 0 ? LEAF | TRANSITIVE_LEAF : 0);
+		for (FieldsExpressionNode child : children) {
+			structureFlags |= child.isWildcard() ? WILDCARD_CHILD : child.isCatchAll() ? CATCH_ALL_CHILD : 0;
+		}
+		if (children.length > 0) {
+			this.children = children;
+			this.hashes = hashes(children);
+			for (int i = 0; i < children.length; i++) {
+				hashFilter |= 1 << hashes[i];
+			}
+		}
+		flags |= structureFlags;
+	}
+	
+	/**
+	 * Marks a node having a wildcard child that is a transitive leaf, computed once all the nodes of a cycle
+	 * have their children.
+	 */
+	void setTransitiveLeaf() {
+		flags |= TRANSITIVE_LEAF;
+	}
+	
+	/**
+	 * @return the hash codes of the children values, followed by the index
+	 */
+	private static int[] hashes(FieldsExpressionNode[] children) {
+		int indexLength = Integer.highestOneBit(children.length) << 2; //load factor between 1/4 and 1/2
+		int[] hashes = new int[children.length + indexLength];
+		for (int i = 0; i < children.length; i++) {
+			hashes[i] = children[i].getValue().hashCode();
+		}
+		//index slots hold the positions + 1, 0 for empty slots
+		int mask = indexLength - 1;
+		for (int i = 0; i < children.length; i++) {
+			int slot = spread(hashes[i]) & mask;
+			while (hashes[children.length + slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			hashes[children.length + slot] = i + 1;
+		}
+		return hashes;
+	}
+	
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+	
+	@Override
+	public FieldsExpressionNode getChild(String childValue) {
+		int hash = childValue.hashCode();
+		if ((hashFilter & (1 << hash)) == 0) {
+			return null;
+		}
+		int childCount = children.length;
+		int mask = hashes.length - childCount - 1;
+		for (int slot = spread(hash) & mask; hashes[childCount + slot] != 0; slot = (slot + 1) & mask) {
+			int position = hashes[childCount + slot] - 1;
+			if (hashes[position] == hash && childValue.equals(children[position].getValue())) {
+				return children[position];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Built on each call from the children array, {@link #getChild} and {@link #getChildren} do not copy.
+	 */
+	@Override
+	public ImmutableMap<String, FieldsExpressionNode> getChildMap() {
+		return Maps.uniqueIndex(Arrays.asList(children), FieldsExpressionNode::getValue);
+	}
+	
+	@Override
+	public List<FieldsExpressionNode> getChildren() {
+		return Collections.unmodifiableList(Arrays.asList(children));
+	}
+	
+	@Override
+	Iterable<FieldsExpressionNode> children() {
+		return Arrays.asList(children);
+	}
+	
+	@Override
+	List<FieldsExpressionNode> getResolvedChildren() {
+		return getChildren();
+	}
+	
+	@Override
+	public boolean isLeaf() {
+		return (flags & LEAF) != 0;
+	}
+	
+	@Override
+	public boolean isTransitiveLeaf() {
+		return (flags & TRANSITIVE_LEAF) != 0;
+	}
+	
+}
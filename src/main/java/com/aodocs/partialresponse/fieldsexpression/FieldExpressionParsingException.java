@@ -38,6 +38,10 @@ public class FieldExpressionParsingException extends IllegalArgumentException {
 		this(fieldsExpression, (Exception) cause);
 	}
 	
+	FieldExpressionParsingException(String fieldsExpression, String reason) {
+		this(fieldsExpression, new IllegalArgumentException(reason));
+	}
+	
 	private FieldExpressionParsingException(String fieldsExpression, Exception cause) {
 		super("fields expression '" + fieldsExpression + "' is invalid", cause);
 		this.fieldsExpression = fieldsExpression;
@@ -21,31 +21,39 @@ package com.aodocs.partialresponse.fieldsexpression;
 
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
  * Describes a fields expression for partial response, as described there: 
  * https://developers.google.com/drive/api/v3/performance#partial-response
+ * 
+ * Instances are immutable once parsed, and can be safely shared between threads
+ * (see {@link FieldsExpressionCache}).
  */
 public final class FieldsExpression {
 	
 	public static FieldsExpression parse(String fieldsExpression) {
-		return new FieldsExpression(fieldsExpression);
+		return parse(fieldsExpression, ParserType.RECURSIVE_DESCENT);
+	}
+	
+	public static FieldsExpression parse(String fieldsExpression, ParserType parserType) {
+		return new FieldsExpression(fieldsExpression, parserType);
 	}
 	
 	private final String fieldsExpression;
-	private final List<ImmutableList<String>> allPaths;
-	private final List<ImmutableList<String>> collapsedPaths;
+	private final ImmutableList<ImmutableList<String>> allPaths;
+	private final ImmutableList<ImmutableList<String>> collapsedPaths;
 	private final FieldsExpressionTree tree;
 	
-	private FieldsExpression(String fieldsExpression) {
+	private FieldsExpression(String fieldsExpression, ParserType parserType) {
 		this.fieldsExpression = fieldsExpression;
-		this.allPaths = Parser.parse(fieldsExpression);
+		this.allPaths = ImmutableList.copyOf(parserType.parse(fieldsExpression));
 		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.createRoot();
 		this.collapsedPaths = collapsePaths(allPaths)
-				.peek(builder::getOrAddBranch).collect(Collectors.toList());
+				.peek(builder::getOrAddBranch).collect(ImmutableList.toImmutableList());
 		this.tree = new FieldsExpressionTree(builder.getNode());
 	}
 
@@ -59,11 +67,31 @@ public final class FieldsExpression {
 
 	public boolean isValidAgainst(FieldsExpressionTree schema) {
 		//we check validity with all paths, as collapsePaths might have removed invalid paths
-		return allPaths.stream()
-				.map(FieldsExpression::createTreeFromPath)
-				.allMatch(schema::contains);
+		for (ImmutableList<String> path : allPaths) {
+			if (!schema.containsPath(path)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
+	/**
+	 * Computes the minimal set of concrete field paths of a schema selected by this expression, for instance
+	 * to load only these fields from a storage. Wildcards are expanded against the schema, except for map
+	 * entries and untyped values, which are selected as a whole. Paths not present in the schema are ignored.
+	 *
+	 * @param schema the schema of the filtered resource
+	 * @return the selected paths, no path being a prefix of another one
+	 */
+	public List<ImmutableList<String>> projectOnto(FieldsExpressionTree schema) {
+		Set<ImmutableList<String>> projection = new LinkedHashSet<>();
+		tree.getRoot().projectOnto(schema.getRoot(), new ArrayList<>(), projection);
+		return projection.stream()
+				.filter(path -> projection.stream().noneMatch(other -> other.size() < path.size()
+						&& path.subList(0, other.size()).equals(other)))
+				.collect(ImmutableList.toImmutableList());
+	}
+	
 	public boolean overlapsWith(FieldsExpressionTree testedTree) {
 		return collapsedPaths.stream()
 				.map(FieldsExpression::createTreeFromPath)
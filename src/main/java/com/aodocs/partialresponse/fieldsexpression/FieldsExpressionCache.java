@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Thread-safe cache of parsed {@link FieldsExpression}, keyed by the raw fields expression.
+ *
+ * The cache is bounded both in number of entries and in weight: expressions longer than
+ * maxExpressionLength are parsed on each call and never cached, so the cached keys never hold
+ * more than maxEntries * maxExpressionLength chars.
+ * Invalid expressions are not cached, {@link FieldExpressionParsingException} is thrown on each call.
+ */
+public final class FieldsExpressionCache {
+
+	private final Cache<String, FieldsExpression> cache;
+	private final int maxExpressionLength;
+	private final ParserType parserType;
+
+	/**
+	 * @param maxEntries maximum number of cached expressions (0 disables caching)
+	 * @param maxExpressionLength expressions longer than this are not cached
+	 * @param expireAfterAccess duration after which an unused expression is evicted
+	 */
+	public FieldsExpressionCache(long maxEntries, int maxExpressionLength, Duration expireAfterAccess) {
+		this(maxEntries, maxExpressionLength, expireAfterAccess, ParserType.RECURSIVE_DESCENT);
+	}
+
+	/**
+	 * @param maxEntries maximum number of cached expressions (0 disables caching)
+	 * @param maxExpressionLength expressions longer than this are not cached
+	 * @param expireAfterAccess duration after which an unused expression is evicted
+	 * @param parserType the parser used on cache misses
+	 */
+	public FieldsExpressionCache(long maxEntries, int maxExpressionLength, Duration expireAfterAccess, ParserType parserType) {
+		Preconditions.checkArgument(maxEntries >= 0, "maxEntries must be positive or zero");
+		Preconditions.checkArgument(maxExpressionLength >= 0, "maxExpressionLength must be positive or zero");
+		this.maxExpressionLength = maxExpressionLength;
+		this.parserType = Preconditions.checkNotNull(parserType, "parserType cannot be null");
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxEntries)
+				.expireAfterAccess(expireAfterAccess.toNanos(), TimeUnit.NANOSECONDS)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Returns the cached parsed expression, or parses and caches it.
+	 *
+	 * @param fieldsExpression the raw fields expression
+	 * @return the parsed expression
+	 * @throws FieldExpressionParsingException if the expression is invalid
+	 */
+	public FieldsExpression parse(String fieldsExpression) {
+		if (fieldsExpression.length() > maxExpressionLength) {
+			return FieldsExpression.parse(fieldsExpression, parserType);
+		}
+		try {
+			return cache.get(fieldsExpression, () -> FieldsExpression.parse(fieldsExpression, parserType));
+		} catch (UncheckedExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw e;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause()); //parsing does not throw checked exceptions
+		}
+	}
+
+	/**
+	 * @return hit, miss and eviction statistics of this cache
+	 */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/**
+	 * @return the approximate number of cached expressions
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+}
@@ -19,15 +19,19 @@
  */
 package com.aodocs.partialresponse.fieldsexpression;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ForwardingCollection;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -36,50 +40,94 @@ import com.google.common.collect.Sets;
 
 /**
  * Describes a fields expression "node".
+ * 
+ * Nodes are either built by a {@link Builder}, or compact and read-only once copied by {@link Builder#compact}.
  */
-public class FieldsExpressionNode {
+public abstract class FieldsExpressionNode {
 	
 	private static final String WILDCARD_VALUE = "*";
 	private static final String CATCH_ALL_VALUE = "**";
 	
+	//flags of the value
+	static final int WILDCARD = 1;
+	static final int CATCH_ALL = 1 << 1;
+	//flags of the structure, only set on compact nodes
+	static final int COMPACT = 1 << 2;
+	static final int LEAF = 1 << 3;
+	static final int TRANSITIVE_LEAF = 1 << 4;
+	static final int WILDCARD_CHILD = 1 << 5;
+	static final int CATCH_ALL_CHILD = 1 << 6;
+	
 	private final String value;
-	//uses an iterable to allow lazy evaluation to handle cycles
-	private Iterable<FieldsExpressionNode> children = Collections.emptySet();
+	//value flags, and structure flags set by CompactNode
+	int flags;
 	
-	private FieldsExpressionNode(String value) {
+	FieldsExpressionNode(String value) {
 		this.value = value;
+		this.flags = WILDCARD_VALUE.equals(value) ? WILDCARD : CATCH_ALL_VALUE.equals(value) ? CATCH_ALL : 0;
 	}
 	
 	/***
 	 * @return current node's children indexed by their name
 	 */
-	public ImmutableMap<String, FieldsExpressionNode> getChildMap() {
-		return Maps.uniqueIndex(children, input -> input.value);
+	public abstract ImmutableMap<String, FieldsExpressionNode> getChildMap();
+	
+	/**
+	 * @param childValue the child name
+	 * @return the child with the provided name, or null if it does not exist
+	 */
+	public abstract FieldsExpressionNode getChild(String childValue);
+	
+	/**
+	 * @return the children, in order, read-only, only copied for a node with unresolved references
+	 */
+	public abstract Collection<FieldsExpressionNode> getChildren();
+	
+	/**
+	 * @return own children, followed by the children of referenced nodes (evaluated on iteration)
+	 */
+	abstract Iterable<FieldsExpressionNode> children();
+	
+	/**
+	 * @return own children, references must be resolved
+	 */
+	abstract List<FieldsExpressionNode> getResolvedChildren();
+	
+	String getValue() {
+		return value;
+	}
+	
+	boolean isCompact() {
+		return (flags & COMPACT) != 0;
+	}
+	
+	/**
+	 * @param childFlag the flag set on a compact node having such a child
+	 * @return false if the node is compact and does not have such a child
+	 */
+	private boolean mayHaveChild(int childFlag) {
+		return (flags & (COMPACT | childFlag)) != COMPACT;
 	}
 	
 	public boolean isRoot() {
 		return value == null;
 	}
 	
-	public boolean isLeaf() {
-		return Iterables.isEmpty(children);
-	}
+	public abstract boolean isLeaf();
 	
 	/**
 	 * @return true if this node is either :
 	 * - a direct leaf
 	 * - or a transitive leaf (ie: has a wildcard+transitiveLeaf child)
 	 */
-	public boolean isTransitiveLeaf() {
-		return isLeaf() || streamChildren().anyMatch(child -> child.isWildcard() && child.isTransitiveLeaf());
-	}
+	public abstract boolean isTransitiveLeaf();
 	
 	public boolean isWildcard() {
-		return WILDCARD_VALUE.equals(value);
+		return (flags & WILDCARD) != 0;
 	}
 	
 	public boolean isCatchAll() {
-		return CATCH_ALL_VALUE.equals(value);
+		return (flags & CATCH_ALL) != 0;
 	}
 	
 	public boolean matches(String otherValue) {
@@ -100,8 +148,87 @@ public class FieldsExpressionNode {
 		return false;
 	}
 	
-	private Stream<FieldsExpressionNode> streamChildren() {
-		return StreamSupport.stream(children.spliterator(), false);
+	/**
+	 * Walks a path in this tree, with the same semantics as {@link #checkContainment}
+	 * with a single-branch tree, without creating it.
+	 *
+	 * @param path the path to check
+	 * @param index the index of the path segment to match with this node's children
+	 * @return true if the path, from index, is contained in this node
+	 */
+	boolean containsPath(List<String> path, int index) {
+		if (index == path.size()) {
+			return true;
+		}
+		String segment = path.get(index);
+		if (WILDCARD_VALUE.equals(segment)) {
+			for (FieldsExpressionNode child : children()) {
+				if (child.isCatchAll() || child.containsPath(path, index + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (mayHaveChild(CATCH_ALL_CHILD) && getChild(CATCH_ALL_VALUE) != null) {
+			return true;
+		}
+		FieldsExpressionNode namedChild = getChild(segment);
+		if (namedChild != null && namedChild.containsPath(path, index + 1)) {
+			return true;
+		}
+		if (!mayHaveChild(WILDCARD_CHILD)) {
+			return false;
+		}
+		FieldsExpressionNode wildcardChild = getChild(WILDCARD_VALUE);
+		return wildcardChild != null && wildcardChild.containsPath(path, index + 1);
+	}
+	
+	/**
+	 * Projects this filter node onto a schema node with the same path: collects the concrete paths
+	 * of the schema selected by this node, wildcards being expanded against the schema.
+	 *
+	 * @param schemaNode the schema node matching this node
+	 * @param path the path of this node
+	 * @param projection the collected paths
+	 */
+	void projectOnto(FieldsExpressionNode schemaNode, List<String> path, Collection<ImmutableList<String>> projection) {
+		if (!isRoot() && isTransitiveLeaf() || schemaNode.getChild(CATCH_ALL_VALUE) != null) {
+			projection.add(ImmutableList.copyOf(path)); //the whole field is needed
+			return;
+		}
+		for (FieldsExpressionNode child : children()) {
+			if (child.isWildcard()) {
+				for (FieldsExpressionNode schemaChild : schemaNode.children()) {
+					if (schemaChild.isWildcard()) {
+						projection.add(ImmutableList.copyOf(path)); //map keys can't be enumerated
+					} else {
+						child.projectOntoChild(schemaChild, schemaChild.value, path, projection);
+					}
+				}
+			} else {
+				FieldsExpressionNode schemaChild = schemaNode.getChild(child.value);
+				if (schemaChild == null) {
+					schemaChild = schemaNode.getChild(WILDCARD_VALUE); //map key
+				}
+				if (schemaChild != null) {
+					child.projectOntoChild(schemaChild, child.value, path, projection);
+				}
+			}
+		}
+	}
+	
+	private void projectOntoChild(FieldsExpressionNode schemaChild, String name, List<String> path,
+			Collection<ImmutableList<String>> projection) {
+		if (schemaChild.isLeaf() && !isTransitiveLeaf()) {
+			return; //the filter goes below a simple field, nothing is selected
+		}
+		path.add(name);
+		projectOnto(schemaChild, path, projection);
+		path.remove(path.size() - 1);
+	}
+	
+	Stream<FieldsExpressionNode> streamChildren() {
+		return StreamSupport.stream(children().spliterator(), false);
 	}
 	
 	/**
@@ -115,7 +242,7 @@ public class FieldsExpressionNode {
 	
 	private void walk(TreeWalker walker, int depth) {
 		walker.walkNode(value, depth);
-		for (FieldsExpressionNode child : children) {
+		for (FieldsExpressionNode child : children()) {
 			child.walk(walker, depth + 1);
 		}
 	}
@@ -140,6 +267,69 @@ public class FieldsExpressionNode {
 		return Objects.hash(value, getChildMap());
 	}
 	
+	/**
+	 * Node built by a {@link Builder}: children are indexed in a map, and referenced root nodes are read on access.
+	 */
+	private static final class MutableNode extends FieldsExpressionNode {
+		
+		//children added to this node, indexed by value
+		private Map<String, FieldsExpressionNode> ownChildren = Collections.emptyMap();
+		//referenced ($ref) root nodes, their children are read on access until resolveReferences is called
+		private List<FieldsExpressionNode> references = Collections.emptyList();
+		
+		private MutableNode(String value) {
+			super(value);
+		}
+		
+		@Override
+		public ImmutableMap<String, FieldsExpressionNode> getChildMap() {
+			if (references.isEmpty()) {
+				return ImmutableMap.copyOf(ownChildren);
+			}
+			return Maps.uniqueIndex(children(), FieldsExpressionNode::getValue);
+		}
+		
+		@Override
+		public FieldsExpressionNode getChild(String childValue) {
+			FieldsExpressionNode child = ownChildren.get(childValue);
+			for (int i = 0; child == null && i < references.size(); i++) {
+				child = references.get(i).getChild(childValue);
+			}
+			return child;
+		}
+		
+		@Override
+		public Collection<FieldsExpressionNode> getChildren() {
+			return references.isEmpty() ? Collections.unmodifiableCollection(ownChildren.values()) : ImmutableList.copyOf(children());
+		}
+		
+		@Override
+		Iterable<FieldsExpressionNode> children() {
+			if (references.isEmpty()) {
+				return ownChildren.values();
+			}
+			return Iterables.concat(ownChildren.values(),
+					Iterables.concat(Lists.transform(references, FieldsExpressionNode::children)));
+		}
+		
+		@Override
+		List<FieldsExpressionNode> getResolvedChildren() {
+			Preconditions.checkState(references.isEmpty(), "References must be resolved before compacting");
+			return ImmutableList.copyOf(ownChildren.values());
+		}
+		
+		@Override
+		public boolean isLeaf() {
+			return ownChildren.isEmpty() && references.stream().allMatch(FieldsExpressionNode::isLeaf);
+		}
+		
+		@Override
+		public boolean isTransitiveLeaf() {
+			return isLeaf() || streamChildren().anyMatch(child -> child.isWildcard() && child.isTransitiveLeaf());
+		}
+		
+	}
+	
 	/**
 	 * Mutable implementation of a FilteringNode, used for building fields expression trees.
 	 */
@@ -182,10 +372,20 @@ public class FieldsExpressionNode {
 			return builder;
 		}
 		
+		/**
+		 * Creates a detached node, used to rebuild trees whose nodes are shared (see {@link #addChild}).
+		 *
+		 * @param value the node value, null for a root node
+		 * @return the node builder
+		 */
+		public static Builder createNode(String value) {
+			return new Builder(new MutableNode(value));
+		}
+		
 		private final FieldsExpressionNode node;
 		
 		private Builder() {
-			node = new FieldsExpressionNode(null);
+			node = new MutableNode(null);
 		}
 		
 		private Builder(FieldsExpressionNode node) {
@@ -196,6 +396,15 @@ public class FieldsExpressionNode {
 			return node;
 		}
 		
+		/**
+		 * @return the node, if it can be modified
+		 * @throws IllegalStateException if the node is compact
+		 */
+		private MutableNode getMutableNode() {
+			Preconditions.checkState(node instanceof MutableNode, "Compact nodes cannot be modified");
+			return (MutableNode) node;
+		}
+		
 		/**
 		 * If the child exists, returns the existing child node, or create a new one.
 		 *
@@ -203,14 +412,35 @@ public class FieldsExpressionNode {
 		 * @return the child builder
 		 */
 		public Builder getOrAddChild(String childValue) {
-			FieldsExpressionNode child = node.getChildMap().get(childValue);
+			FieldsExpressionNode child = node.getChild(childValue);
 			if (child == null) {
-				child = new FieldsExpressionNode(childValue);
-				node.children = Iterables.concat(node.children, Collections.singleton(child));
+				MutableNode mutableNode = getMutableNode();
+				child = new MutableNode(childValue);
+				if (mutableNode.ownChildren.isEmpty()) {
+					mutableNode.ownChildren = new LinkedHashMap<>();
+				}
+				mutableNode.ownChildren.put(childValue, child);
 			}
 			return new Builder(child);
 		}
 		
+		/**
+		 * Adds an existing node as a child. The child is shared, not copied, so cycles can be built.
+		 *
+		 * @param child the child node, its value must not be used by another child
+		 * @return this builder
+		 */
+		public Builder addChild(FieldsExpressionNode child) {
+			Preconditions.checkArgument(child.value != null, "A root node cannot be a child");
+			Preconditions.checkState(node.getChild(child.value) == null, "Duplicate child %s", child.value);
+			MutableNode mutableNode = getMutableNode();
+			if (mutableNode.ownChildren.isEmpty()) {
+				mutableNode.ownChildren = new LinkedHashMap<>();
+			}
+			mutableNode.ownChildren.put(child.value, child);
+			return this;
+		}
+		
 		/**
 		 * Creates the missing branch values if needed, or reuses the existing ones.
 		 *
@@ -231,8 +461,10 @@ public class FieldsExpressionNode {
 		 * @return the child catch-all node
 		 */
 		public Builder setCatchAllChild() {
-			FieldsExpressionNode catchAllNode = new FieldsExpressionNode(CATCH_ALL_VALUE);
-			node.children = Collections.singleton(catchAllNode);
+			MutableNode mutableNode = getMutableNode();
+			FieldsExpressionNode catchAllNode = new MutableNode(CATCH_ALL_VALUE);
+			mutableNode.ownChildren = Collections.singletonMap(CATCH_ALL_VALUE, catchAllNode);
+			mutableNode.references = Collections.emptyList();
 			return new Builder(catchAllNode);
 		}
 		
@@ -244,22 +476,47 @@ public class FieldsExpressionNode {
 		public void merge(FieldsExpressionNode other) {
 			String value = other.value;
 			Preconditions.checkArgument(value == null, "Only root nodes can be merged");
+			MutableNode mutableNode = getMutableNode();
 			Sets.SetView<String> sameNodes = Sets.intersection(node.getChildMap().keySet(), other.getChildMap().keySet());
 			Preconditions.checkState(sameNodes.isEmpty(), "Duplicate children %s", sameNodes);
-			node.children = Iterables.concat(node.children, lazyChildIterable(other));
+			//other might still be under construction (cycles), so its children are not copied
+			if (mutableNode.references.isEmpty()) {
+				mutableNode.references = new ArrayList<>(1);
+			}
+			mutableNode.references.add(other);
 		}
 		
 		/**
-		 * Wraps the children iterable in a forwarding collection, so it is evaluated lazily.
-		 * This is necessary to handle cycles properly in the tree.
+		 * Replaces the references added by {@link #merge} with the current children of the referenced nodes.
+		 * Must be called once all referenced nodes are complete: lookups are then a single map access.
+		 * Child nodes are shared with the referenced nodes, not copied, so cycles are preserved.
 		 */
-		private static Iterable<FieldsExpressionNode> lazyChildIterable(FieldsExpressionNode node) {
-			return new ForwardingCollection<FieldsExpressionNode>() {
-				@Override
-				protected Collection<FieldsExpressionNode> delegate() {
-					return Lists.newArrayList(node.children);
+		public void resolveReferences() {
+			if (node instanceof MutableNode && !((MutableNode) node).references.isEmpty()) {
+				MutableNode mutableNode = (MutableNode) node;
+				Map<String, FieldsExpressionNode> resolvedChildren = new LinkedHashMap<>();
+				for (FieldsExpressionNode child : mutableNode.children()) {
+					resolvedChildren.putIfAbsent(child.value, child);
 				}
-			};
+				mutableNode.ownChildren = resolvedChildren;
+				mutableNode.references = Collections.emptyList();
+			}
+		}
+		
+		/**
+		 * Copies the nodes reachable from the roots to a compact, read-only layout: values are interned
+		 * in a symbol table shared by all compact trees, children are stored in arrays, and the leaf, transitive
+		 * leaf and wildcard or catch-all child flags are precomputed. The given nodes are not modified.
+		 * Equivalent subtrees are shared, within these trees and with all the trees compacted before
+		 * (see {@link SubtreeSharingStats}). Compact nodes reachable from the roots are kept as is.
+		 * Meant for schema trees, which stay in memory, once all their references are resolved.
+		 *
+		 * @param roots the roots of the trees to convert
+		 * @param <K> the key type
+		 * @return the compact roots, with the same keys
+		 */
+		public static <K> Map<K, FieldsExpressionNode> compact(Map<K, FieldsExpressionNode> roots) {
+			return SubtreeInterner.intern(roots);
 		}
 		
 	}
@@ -19,6 +19,7 @@
  */
 package com.aodocs.partialresponse.fieldsexpression;
 
+import java.util.List;
 import java.util.Objects;
 
 import com.google.common.base.Strings;
@@ -64,6 +65,16 @@ public final class FieldsExpressionTree {
 		return root.checkContainment(otherTree.root);
 	}
 	
+	/**
+	 * Checks if the current tree contains a single path, in O(path length) when there is no wildcard.
+	 *
+	 * @param path a path of field names
+	 * @return true if the current tree contains the path
+	 */
+	boolean containsPath(List<String> path) {
+		return root.containsPath(path, 0);
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (this == o)
@@ -0,0 +1,60 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Available implementations of the fields expression parser. Both produce the same results.
+ */
+public enum ParserType {
+	
+	/**
+	 * Parser generated by Antlr from the FieldsExpression.g4 grammar.
+	 */
+	ANTLR {
+		@Override
+		List<ImmutableList<String>> parse(String fieldsExpression) {
+			return Parser.parse(fieldsExpression);
+		}
+	},
+	
+	/**
+	 * Hand-written single pass parser, faster and allocating much less than the Antlr one.
+	 */
+	RECURSIVE_DESCENT {
+		@Override
+		List<ImmutableList<String>> parse(String fieldsExpression) {
+			return RecursiveDescentParser.parse(fieldsExpression);
+		}
+	};
+	
+	/**
+	 * Parses and explodes a fields expression to individual paths.
+	 *
+	 * @param fieldsExpression the fields expression
+	 * @return all the paths in the expression, with ending wildcards removed
+	 * @throws FieldExpressionParsingException if the expression is invalid
+	 */
+	abstract List<ImmutableList<String>> parse(String fieldsExpression);
+	
+}
@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Hand-written single pass parser for the FieldsExpression.g4 grammar, exploding the expression
+ * to individual paths while reading it.
+ * It produces the same paths and fails on the same inputs as the Antlr based {@link Parser}.
+ */
+class RecursiveDescentParser {
+	
+	private static final int EOF = -1;
+	
+	private final String fieldsExpression;
+	private final List<String> currentPath = new ArrayList<>();
+	private final ImmutableList.Builder<ImmutableList<String>> paths = ImmutableList.builder();
+	private int position;
+	
+	private RecursiveDescentParser(String fieldsExpression) {
+		this.fieldsExpression = fieldsExpression;
+	}
+	
+	static List<ImmutableList<String>> parse(String fieldsExpression) {
+		return new RecursiveDescentParser(fieldsExpression).parse();
+	}
+	
+	private List<ImmutableList<String>> parse() {
+		expression();
+		//like the Antlr parser (no EOF in the grammar), remaining chars after a valid expression are ignored
+		return paths.build();
+	}
+	
+	/**
+	 * expression : selection (',' selection)*;
+	 */
+	private void expression() {
+		selection();
+		while (peek() == ',') {
+			position++;
+			selection();
+		}
+	}
+	
+	/**
+	 * selection : FIELDNAME ('/' FIELDNAME)* ('(' expression ')')?;
+	 */
+	private void selection() {
+		int parentPathSize = currentPath.size();
+		currentPath.add(fieldName());
+		while (peek() == '/') {
+			position++;
+			currentPath.add(fieldName());
+		}
+		if (peek() == '(') {
+			position++;
+			expression();
+			if (peek() != ')') {
+				throw unexpectedChar();
+			}
+			position++;
+		} else {
+			addCurrentPath();
+		}
+		currentPath.subList(parentPathSize, currentPath.size()).clear();
+	}
+	
+	/**
+	 * FIELDNAME: ~(',' | '/' | ')' | '(' | [ \t\r\n])+;
+	 */
+	private String fieldName() {
+		peek();
+		int start = position;
+		while (position < fieldsExpression.length() && !isSyntaxChar(fieldsExpression.charAt(position))) {
+			position++;
+		}
+		if (position == start) {
+			throw unexpectedChar();
+		}
+		return fieldsExpression.substring(start, position);
+	}
+	
+	/**
+	 * Skips whitespaces, and returns the next char without consuming it.
+	 *
+	 * @return the next char, or EOF
+	 */
+	private int peek() {
+		while (position < fieldsExpression.length() && isWhitespace(fieldsExpression.charAt(position))) {
+			position++;
+		}
+		return position < fieldsExpression.length() ? fieldsExpression.charAt(position) : EOF;
+	}
+	
+	/**
+	 * Ending wildcards are not needed : fieldA, fieldA / *, fieldA / * / * are equal
+	 */
+	private void addCurrentPath() {
+		int size = currentPath.size();
+		while (size > 1 && currentPath.get(size - 1).equals("*")) {
+			size--;
+		}
+		paths.add(ImmutableList.copyOf(currentPath.subList(0, size)));
+	}
+	
+	private FieldExpressionParsingException unexpectedChar() {
+		String found = position < fieldsExpression.length() ? "'" + fieldsExpression.charAt(position) + "'" : "end of expression";
+		return new FieldExpressionParsingException(fieldsExpression, "unexpected " + found + " at position " + position);
+	}
+	
+	private static boolean isSyntaxChar(char c) {
+		return c == ',' || c == '/' || c == '(' || c == ')' || isWhitespace(c);
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+	
+	@Override
+	public String toString() {
+		return fieldsExpression;
+	}
+}
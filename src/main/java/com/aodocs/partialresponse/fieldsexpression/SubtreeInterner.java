@@ -0,0 +1,558 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import com.google.common.base.Equivalence;
+
+/**
+ * Hash-consing of compact nodes: equivalent subtrees are stored once, and shared by all trees compacted
+ * in this JVM, for instance several versions of the same API.
+ * 
+ * Two nodes are equivalent if they have the same value and equivalent children in the same order.
+ * Schema trees are graphs with cycles ($ref to a parent schema), so new nodes are interned by strongly
+ * connected component, children components first: the nodes of a cyclic component are first minimized
+ * by partition refinement, then the component is replaced by an existing equivalent one if there is one,
+ * or its nodes become canonical. Most components are a single node, interned from its value and children.
+ * 
+ * Canonical nodes are weakly referenced, they are released with the last tree using them.
+ * The table of canonical nodes is process-wide, split in lock stripes by hash code.
+ */
+final class SubtreeInterner {
+	
+	private static final Equivalence<Object> IDENTITY = Equivalence.identity();
+	
+	//power of two, a component is looked up and added under the lock of the stripe of its entry hash
+	private static final int STRIPE_COUNT = 16;
+	private static final Stripe[] STRIPES = new Stripe[STRIPE_COUNT];
+	private static final ReferenceQueue<FieldsExpressionNode> RELEASED = new ReferenceQueue<>();
+	private static final LongAdder INTERNED_NODE_COUNT = new LongAdder();
+	private static final LongAdder SHARED_NODE_COUNT = new LongAdder();
+	
+	static {
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			STRIPES[i] = new Stripe();
+		}
+	}
+	
+	private SubtreeInterner() {
+	}
+	
+	/**
+	 * Makes all the nodes reachable from the roots compact and canonical. The graph analysis is done without lock,
+	 * components are then looked up and added under the lock of a single stripe, so that trees are compacted
+	 * concurrently. Equivalent components interned at the same time from different entry classes may be stored twice.
+	 *
+	 * @param roots root nodes, their references must be resolved
+	 * @param <K> the key type
+	 * @return the canonical roots, with the same keys
+	 */
+	static <K> Map<K, FieldsExpressionNode> intern(Map<K, FieldsExpressionNode> roots) {
+		expungeReleasedEntries();
+		Graph graph = new Graph(roots.values());
+		int createdCount = 0;
+		for (int[] component : graph.stronglyConnectedComponents()) {
+			createdCount += new Component(graph, component).intern();
+		}
+		INTERNED_NODE_COUNT.add(graph.nodes.size());
+		SHARED_NODE_COUNT.add(graph.nodes.size() - createdCount);
+		
+		Map<K, FieldsExpressionNode> canonicalRoots = new LinkedHashMap<>();
+		roots.forEach((key, root) -> canonicalRoots.put(key, graph.canonical(root)));
+		return canonicalRoots;
+	}
+	
+	/**
+	 * @return the statistics of all the trees interned so far in this JVM
+	 */
+	static SubtreeSharingStats stats() {
+		expungeReleasedEntries();
+		long canonicalNodeCount = 0;
+		for (Stripe stripe : STRIPES) {
+			synchronized (stripe) {
+				canonicalNodeCount += stripe.size;
+			}
+		}
+		return new SubtreeSharingStats(INTERNED_NODE_COUNT.sum(), SHARED_NODE_COUNT.sum(), canonicalNodeCount);
+	}
+	
+	private static Stripe stripe(int hash) {
+		return STRIPES[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+	}
+	
+	private static void expungeReleasedEntries() {
+		for (Entry released = (Entry) RELEASED.poll(); released != null; released = (Entry) RELEASED.poll()) {
+			Stripe stripe = stripe(released.hash);
+			synchronized (stripe) {
+				stripe.remove(released);
+			}
+		}
+	}
+	
+	/**
+	 * A hash table of canonical nodes, guarded by its own monitor. Hash codes are spread over the stripes
+	 * by their high bits, and over the buckets of a stripe by their low bits.
+	 */
+	private static final class Stripe {
+		
+		private Entry[] table = new Entry[64];
+		private int size;
+		
+		Entry bucket(int hash) {
+			return table[hash & (table.length - 1)];
+		}
+		
+		void add(int hash, FieldsExpressionNode node) {
+			if (size >= table.length * 3 / 4) {
+				Entry[] newTable = new Entry[table.length * 2];
+				for (Entry head : table) {
+					for (Entry entry = head; entry != null; ) {
+						Entry next = entry.next;
+						int index = entry.hash & (newTable.length - 1);
+						entry.next = newTable[index];
+						newTable[index] = entry;
+						entry = next;
+					}
+				}
+				table = newTable;
+			}
+			int index = hash & (table.length - 1);
+			table[index] = new Entry(node, hash, table[index]);
+			size++;
+		}
+		
+		void remove(Entry released) {
+			int index = released.hash & (table.length - 1);
+			Entry previous = null;
+			for (Entry entry = table[index]; entry != null; previous = entry, entry = entry.next) {
+				if (entry == released) {
+					if (previous == null) {
+						table[index] = entry.next;
+					} else {
+						previous.next = entry.next;
+					}
+					size--;
+					return;
+				}
+			}
+		}
+		
+	}
+	
+	private static final class Entry extends WeakReference<FieldsExpressionNode> {
+		
+		private final int hash;
+		private Entry next;
+		
+		Entry(FieldsExpressionNode node, int hash, Entry next) {
+			super(node, RELEASED);
+			this.hash = hash;
+			this.next = next;
+		}
+		
+	}
+	
+	/**
+	 * The nodes that are not compact yet, reachable from the roots. Compact nodes are already canonical.
+	 */
+	private static final class Graph {
+		
+		private final List<FieldsExpressionNode> nodes = new ArrayList<>();
+		private final Map<FieldsExpressionNode, Integer> nodeIds = new IdentityHashMap<>();
+		private final List<List<FieldsExpressionNode>> children = new ArrayList<>();
+		//ids of the children of each node, -1 for compact children
+		private final List<int[]> childIds = new ArrayList<>();
+		private final FieldsExpressionNode[] canonicalNodes;
+		//strongly connected component of each node, and position of the node in its component
+		private final int[] componentIds;
+		private final int[] positions;
+		
+		Graph(Iterable<FieldsExpressionNode> roots) {
+			Deque<FieldsExpressionNode> toVisit = new ArrayDeque<>();
+			roots.forEach(root -> addNode(root, toVisit));
+			while (!toVisit.isEmpty()) {
+				List<FieldsExpressionNode> nodeChildren = toVisit.poll().getResolvedChildren();
+				int[] ids = new int[nodeChildren.size()];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = addNode(nodeChildren.get(i), toVisit);
+				}
+				children.add(nodeChildren); //visited in id order
+				childIds.add(ids);
+			}
+			canonicalNodes = new FieldsExpressionNode[nodes.size()];
+			componentIds = new int[nodes.size()];
+			positions = new int[nodes.size()];
+		}
+		
+		/**
+		 * @return the id of the node, or -1 for a compact node
+		 */
+		private int addNode(FieldsExpressionNode node, Deque<FieldsExpressionNode> toVisit) {
+			if (node.isCompact()) {
+				return -1;
+			}
+			Integer id = nodeIds.get(node);
+			if (id == null) {
+				id = nodes.size();
+				nodeIds.put(node, id);
+				nodes.add(node);
+				toVisit.add(node);
+			}
+			return id;
+		}
+		
+		/**
+		 * @return the canonical node, once the component of the node is interned
+		 */
+		FieldsExpressionNode canonical(FieldsExpressionNode node) {
+			return node.isCompact() ? node : canonicalNodes[nodeIds.get(node)];
+		}
+		
+		/**
+		 * @return the canonical node of the child at this position, once its component is interned
+		 */
+		FieldsExpressionNode canonicalChild(int id, int position) {
+			int childId = childIds.get(id)[position];
+			return childId < 0 ? children.get(id).get(position) : canonicalNodes[childId];
+		}
+		
+		/**
+		 * Tarjan's algorithm, without recursion: components are returned children first.
+		 */
+		List<int[]> stronglyConnectedComponents() {
+			List<int[]> components = new ArrayList<>();
+			int[] index = new int[nodes.size()];
+			int[] lowLink = new int[nodes.size()];
+			boolean[] onStack = new boolean[nodes.size()];
+			Arrays.fill(index, -1);
+			int[] stack = new int[nodes.size()];
+			int stackSize = 0;
+			int nextIndex = 0;
+			for (int start = 0; start < nodes.size(); start++) {
+				if (index[start] >= 0) {
+					continue;
+				}
+				//each frame is a node and the position of its next child to visit
+				Deque<int[]> frames = new ArrayDeque<>();
+				frames.push(new int[] {start, 0});
+				index[start] = lowLink[start] = nextIndex++;
+				stack[stackSize++] = start;
+				onStack[start] = true;
+				while (!frames.isEmpty()) {
+					int[] frame = frames.peek();
+					int id = frame[0];
+					int[] ids = childIds.get(id);
+					if (frame[1] < ids.length) {
+						int childId = ids[frame[1]++];
+						if (childId < 0) {
+							continue;
+						}
+						if (index[childId] < 0) {
+							index[childId] = lowLink[childId] = nextIndex++;
+							stack[stackSize++] = childId;
+							onStack[childId] = true;
+							frames.push(new int[] {childId, 0});
+						} else if (onStack[childId]) {
+							lowLink[id] = Math.min(lowLink[id], index[childId]);
+						}
+						continue;
+					}
+					frames.pop();
+					if (!frames.isEmpty()) {
+						int parent = frames.peek()[0];
+						lowLink[parent] = Math.min(lowLink[parent], lowLink[id]);
+					}
+					if (lowLink[id] == index[id]) {
+						int memberCount = 1;
+						while (stack[stackSize - memberCount] != id) {
+							memberCount++;
+						}
+						int[] members = new int[memberCount];
+						for (int i = 0; i < memberCount; i++) {
+							members[i] = stack[--stackSize];
+							onStack[members[i]] = false;
+							componentIds[members[i]] = components.size();
+							positions[members[i]] = i;
+						}
+						components.add(members);
+					}
+				}
+			}
+			return components;
+		}
+		
+	}
+	
+	/**
+	 * A strongly connected component of new nodes, all the components below being interned.
+	 * Its nodes are grouped by equivalence class, the children of a class being either a class
+	 * of the component (an Integer), or a canonical node.
+	 */
+	private static final class Component {
+		
+		private final Graph graph;
+		private final int[] members;
+		//class of each member
+		private final int[] classIds;
+		private final int classCount;
+		//first member of each class, and its children
+		private final int[] representatives;
+		private final List<Object[]> classChildren = new ArrayList<>();
+		
+		Component(Graph graph, int[] members) {
+			this.graph = graph;
+			this.members = members;
+			this.classIds = new int[members.length];
+			this.classCount = members.length == 1 ? 1 : refine();
+			this.representatives = new int[classCount];
+			Arrays.fill(representatives, -1);
+			for (int i = 0; i < members.length; i++) {
+				if (representatives[classIds[i]] < 0) {
+					representatives[classIds[i]] = i;
+					classChildren.add(null);
+				}
+			}
+			for (int classId = 0; classId < classCount; classId++) {
+				int id = members[representatives[classId]];
+				int[] ids = graph.childIds.get(id);
+				Object[] targets = new Object[ids.length];
+				for (int i = 0; i < targets.length; i++) {
+					int position = position(ids[i]);
+					targets[i] = position >= 0 ? (Object) classIds[position] : graph.canonicalChild(id, i);
+				}
+				classChildren.set(classId, targets);
+			}
+		}
+		
+		/**
+		 * @param id a node id, or -1 for a compact node
+		 * @return the position of the node in this component, or -1 if it is not a member
+		 */
+		private int position(int id) {
+			return id >= 0 && graph.componentIds[id] == graph.componentIds[members[0]] ? graph.positions[id] : -1;
+		}
+		
+		/**
+		 * Moore's partition refinement: members start grouped by value, and classes are split
+		 * until all the members of a class have children of the same classes.
+		 *
+		 * @return the number of classes
+		 */
+		private int refine() {
+			int count = assignClasses(i -> Arrays.asList(member(i).getValue()));
+			int previousCount;
+			do {
+				previousCount = count;
+				int[] previousClassIds = classIds.clone();
+				count = assignClasses(i -> {
+					int[] ids = graph.childIds.get(members[i]);
+					List<Object> signature = new ArrayList<>(ids.length + 1);
+					signature.add(previousClassIds[i]);
+					for (int position = 0; position < ids.length; position++) {
+						int memberPosition = position(ids[position]);
+						signature.add(memberPosition >= 0 ? previousClassIds[memberPosition]
+								: IDENTITY.wrap(graph.canonicalChild(members[i], position)));
+					}
+					return signature;
+				});
+			} while (count != previousCount);
+			return count;
+		}
+		
+		private int assignClasses(IntFunction<List<Object>> signatures) {
+			Map<List<Object>, Integer> classes = new HashMap<>();
+			for (int i = 0; i < members.length; i++) {
+				Integer classId = classes.putIfAbsent(signatures.apply(i), classes.size());
+				classIds[i] = classId != null ? classId : classes.size() - 1;
+			}
+			return classes.size();
+		}
+		
+		private FieldsExpressionNode member(int position) {
+			return graph.nodes.get(members[position]);
+		}
+		
+		private FieldsExpressionNode representative(int classId) {
+			return member(representatives[classId]);
+		}
+		
+		/**
+		 * Replaces the component by an existing equivalent one, or makes its representatives canonical.
+		 *
+		 * @return the number of nodes made canonical
+		 */
+		int intern() {
+			int[] hashes = new int[classCount];
+			for (int classId = 0; classId < classCount; classId++) {
+				hashes[classId] = hash(classId);
+			}
+			FieldsExpressionNode[] canonical = new FieldsExpressionNode[classCount];
+			CompactNode[] created = new CompactNode[classCount];
+			Stripe entryStripe = stripe(hashes[0]);
+			synchronized (entryStripe) {
+				for (Entry entry = entryStripe.bucket(hashes[0]); entry != null; entry = entry.next) {
+					FieldsExpressionNode candidate = entry.get();
+					if (entry.hash == hashes[0] && candidate != null && matches(candidate, canonical)) {
+						setCanonicalNodes(canonical);
+						return 0;
+					}
+				}
+				for (int classId = 0; classId < classCount; classId++) {
+					canonical[classId] = created[classId] = new CompactNode(representative(classId).getValue());
+				}
+				for (int classId = 0; classId < classCount; classId++) {
+					created[classId].setChildren(canonicalChildren(classId, canonical));
+				}
+				setTransitiveLeaves(created);
+				entryStripe.add(hashes[0], canonical[0]);
+			}
+			//each class is registered with its own hash, the component can then be found from any of them
+			for (int classId = 1; classId < classCount; classId++) {
+				Stripe stripe = stripe(hashes[classId]);
+				synchronized (stripe) {
+					stripe.add(hashes[classId], canonical[classId]);
+				}
+			}
+			setCanonicalNodes(canonical);
+			return classCount;
+		}
+		
+		private FieldsExpressionNode[] canonicalChildren(int classId, FieldsExpressionNode[] canonical) {
+			Object[] targets = classChildren.get(classId);
+			FieldsExpressionNode[] canonicalChildren = new FieldsExpressionNode[targets.length];
+			for (int i = 0; i < targets.length; i++) {
+				canonicalChildren[i] = targets[i] instanceof Integer
+						? canonical[(Integer) targets[i]] : (FieldsExpressionNode) targets[i];
+			}
+			return canonicalChildren;
+		}
+		
+		/**
+		 * A node is a transitive leaf if it has a wildcard child that is a transitive leaf: the flag is propagated
+		 * inside the component until nothing changes, as wildcard children might form a cycle.
+		 */
+		private void setTransitiveLeaves(CompactNode[] created) {
+			boolean changed;
+			do {
+				changed = false;
+				for (CompactNode node : created) {
+					if (!node.isTransitiveLeaf() && node.getResolvedChildren().stream()
+							.anyMatch(child -> child.isWildcard() && child.isTransitiveLeaf())) {
+						node.setTransitiveLeaf();
+						changed = true;
+					}
+				}
+			} while (changed);
+		}
+		
+		private void setCanonicalNodes(FieldsExpressionNode[] canonical) {
+			for (int i = 0; i < members.length; i++) {
+				graph.canonicalNodes[members[i]] = canonical[classIds[i]];
+			}
+		}
+		
+		/**
+		 * Hashes the component as seen from one of its classes: classes are numbered in breadth-first order,
+		 * so that equivalent components have the same hash from equivalent classes.
+		 */
+		private int hash(int entryClass) {
+			int[] order = new int[classCount];
+			Arrays.fill(order, -1);
+			Deque<Integer> toVisit = new ArrayDeque<>();
+			order[entryClass] = 0;
+			toVisit.add(entryClass);
+			int visitedCount = 1;
+			int hash = 1;
+			while (!toVisit.isEmpty()) {
+				int classId = toVisit.poll();
+				hash = 31 * hash + Objects.hashCode(representative(classId).getValue());
+				for (Object target : classChildren.get(classId)) {
+					if (!(target instanceof Integer)) {
+						hash = 31 * hash + System.identityHashCode(target);
+						continue;
+					}
+					int childClass = (Integer) target;
+					if (order[childClass] < 0) {
+						order[childClass] = visitedCount++;
+						toVisit.add(childClass);
+					}
+					hash = 31 * hash + order[childClass];
+				}
+			}
+			return hash;
+		}
+		
+		/**
+		 * Walks the component and a canonical node in parallel. The walk succeeds if it is a bisimulation:
+		 * all the paired nodes are equivalent, and the canonical node of each class is set.
+		 */
+		private boolean matches(FieldsExpressionNode candidate, FieldsExpressionNode[] canonical) {
+			Arrays.fill(canonical, null);
+			Deque<Integer> toVisit = new ArrayDeque<>();
+			canonical[0] = candidate;
+			toVisit.add(0);
+			while (!toVisit.isEmpty()) {
+				int classId = toVisit.poll();
+				FieldsExpressionNode node = canonical[classId];
+				Object[] targets = classChildren.get(classId);
+				if (!node.isCompact() || !Objects.equals(representative(classId).getValue(), node.getValue())) {
+					return false;
+				}
+				List<FieldsExpressionNode> nodeChildren = node.getResolvedChildren();
+				if (targets.length != nodeChildren.size()) {
+					return false;
+				}
+				for (int i = 0; i < targets.length; i++) {
+					FieldsExpressionNode nodeChild = nodeChildren.get(i);
+					if (!(targets[i] instanceof Integer)) {
+						if (targets[i] != nodeChild) {
+							return false;
+						}
+						continue;
+					}
+					int childClass = (Integer) targets[i];
+					if (canonical[childClass] == null) {
+						canonical[childClass] = nodeChild;
+						toVisit.add(childClass);
+					} else if (canonical[childClass] != nodeChild) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		
+	}
+	
+}
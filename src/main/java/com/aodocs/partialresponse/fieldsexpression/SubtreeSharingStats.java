@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+/**
+ * Report of the sharing of equivalent subtrees between all the compact trees of this JVM,
+ * see {@link FieldsExpressionNode.Builder#compact}. The statistics are process-wide: they are not scoped to a servlet
+ * or a repository, trees compacted by all of them are counted together.
+ */
+public final class SubtreeSharingStats {
+	
+	/**
+	 * @return the statistics of all the trees compacted so far in this JVM
+	 */
+	public static SubtreeSharingStats current() {
+		return SubtreeInterner.stats();
+	}
+	
+	private final long compactedNodeCount;
+	private final long sharedNodeCount;
+	private final long canonicalNodeCount;
+	
+	SubtreeSharingStats(long compactedNodeCount, long sharedNodeCount, long canonicalNodeCount) {
+		this.compactedNodeCount = compactedNodeCount;
+		this.sharedNodeCount = sharedNodeCount;
+		this.canonicalNodeCount = canonicalNodeCount;
+	}
+	
+	/**
+	 * @return the number of distinct nodes of all the trees compacted so far, before sharing
+	 */
+	public long getCompactedNodeCount() {
+		return compactedNodeCount;
+	}
+	
+	/**
+	 * @return the number of compacted nodes replaced by an equivalent node, and not kept in memory
+	 */
+	public long getSharedNodeCount() {
+		return sharedNodeCount;
+	}
+	
+	/**
+	 * @return the number of nodes currently in memory, nodes of released trees excluded
+	 */
+	public long getCanonicalNodeCount() {
+		return canonicalNodeCount;
+	}
+	
+	/**
+	 * @return the ratio of compacted nodes that were shared
+	 */
+	public double getSharedRatio() {
+		return compactedNodeCount == 0 ? 0 : (double) sharedNodeCount / compactedNodeCount;
+	}
+	
+	@Override
+	public String toString() {
+		return "SubtreeSharingStats{compactedNodeCount=" + compactedNodeCount + ", sharedNodeCount=" + sharedNodeCount
+				+ ", canonicalNodeCount=" + canonicalNodeCount + "}";
+	}
+	
+}
@@ -0,0 +1,46 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Interns the names of compact nodes, shared by all compact trees: each distinct name is stored once,
+ * the canonical String instance being the symbol of the name.
+ * 
+ * Symbols are weakly referenced, a name is released once no compact node uses it.
+ */
+final class SymbolTable {
+	
+	private static final Interner<String> SYMBOLS = Interners.newWeakInterner();
+	
+	private SymbolTable() {
+	}
+	
+	/**
+	 * @param name a name
+	 * @return the canonical instance of the name, added to the table if needed
+	 */
+	static String intern(String name) {
+		return SYMBOLS.intern(name);
+	}
+	
+}
@@ -20,56 +20,520 @@
 package com.aodocs.partialresponse.json;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 
+import com.fasterxml.jackson.core.Base64Variant;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.core.filter.FilteringGeneratorDelegate;
 import com.fasterxml.jackson.core.filter.TokenFilter;
 
 /**
  * A FilteringGeneratorDelegate that will not output a blank result if everything is filtered,
  * but will return an empty struct (either {} or [] depending on the first token encountered).
+ * 
+ * Once an object or array is known to be excluded, all its nested tokens are dropped by a depth counter,
+ * without creating filter contexts or querying the filter. When copying from a parser, excluded values
+ * are skipped in the parser instead.
  */
 class AbstractFilteringGenerator extends FilteringGeneratorDelegate {
 	
+	private final FilteringCounters counters;
 	private Boolean rootIsArray;
+	//depth inside an excluded object or array, 0 when not skipping
+	private int skipDepth;
+	//only counted when counters are set
+	private long receivedTokens;
 	
 	AbstractFilteringGenerator(JsonGenerator d, TokenFilter f, boolean includePath, boolean allowMultipleMatches) {
-		super(d, f, includePath, allowMultipleMatches);
+		this(d, f, includePath, allowMultipleMatches, FilteringCounters.current());
+	}
+	
+	private AbstractFilteringGenerator(JsonGenerator d, TokenFilter f, boolean includePath, boolean allowMultipleMatches,
+			FilteringCounters counters) {
+		//written tokens are only counted when collecting
+		super(counters == null ? d : new CountingJsonGenerator(d), f, includePath, allowMultipleMatches);
+		this.counters = counters;
 	}
 	
 	@Override
 	public void writeStartArray() throws IOException {
+		if (startSkipping()) {
+			return;
+		}
 		setRootIsArrayIfUndefined(true);
 		super.writeStartArray();
 	}
 	
 	@Override
 	public void writeStartArray(int size) throws IOException {
+		if (startSkipping()) {
+			return;
+		}
 		setRootIsArrayIfUndefined(true);
 		super.writeStartArray(size);
 	}
 	
+	@Override
+	public void writeStartArray(Object forValue) throws IOException {
+		if (startSkipping()) {
+			return;
+		}
+		setRootIsArrayIfUndefined(true);
+		super.writeStartArray(forValue);
+	}
+	
+	@Override
+	public void writeStartArray(Object forValue, int size) throws IOException {
+		if (startSkipping()) {
+			return;
+		}
+		setRootIsArrayIfUndefined(true);
+		super.writeStartArray(forValue, size);
+	}
+	
+	@Override
+	public void writeEndArray() throws IOException {
+		if (!endSkipping()) {
+			super.writeEndArray();
+		}
+	}
+	
 	@Override
 	public void writeStartObject() throws IOException {
+		if (startSkipping()) {
+			return;
+		}
 		setRootIsArrayIfUndefined(false);
 		super.writeStartObject();
 	}
 	
 	@Override
 	public void writeStartObject(Object forValue) throws IOException {
+		if (startSkipping()) {
+			return;
+		}
 		setRootIsArrayIfUndefined(false);
 		super.writeStartObject(forValue);
 	}
 	
+	@Override
+	public void writeStartObject(Object forValue, int size) throws IOException {
+		if (startSkipping()) {
+			return;
+		}
+		setRootIsArrayIfUndefined(false);
+		super.writeStartObject(forValue, size);
+	}
+	
+	@Override
+	public void writeEndObject() throws IOException {
+		if (!endSkipping()) {
+			super.writeEndObject();
+		}
+	}
+	
 	private void setRootIsArrayIfUndefined(boolean rootIsArray) {
 		if (this.rootIsArray == null) {
 			this.rootIsArray = rootIsArray;
 		}
 	}
 	
+	/**
+	 * @return true if the object or array being started is excluded, or is nested in an excluded one
+	 */
+	private boolean startSkipping() {
+		if (counters != null) {
+			receivedTokens++;
+		}
+		if (skipDepth > 0 || _itemFilter == null) {
+			skipDepth++;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the object or array being ended was skipped
+	 */
+	private boolean endSkipping() {
+		if (counters != null) {
+			receivedTokens++;
+		}
+		if (skipDepth == 0) {
+			return false;
+		}
+		if (--skipDepth == 0) {
+			//as done by FilteringGeneratorDelegate when closing the context of an excluded struct
+			_itemFilter = _filterContext.getFilter();
+		}
+		return true;
+	}
+	
+	/**
+	 * Counts a received value or field name.
+	 *
+	 * @return true if the token must be passed to the filter
+	 */
+	private boolean receive() {
+		if (counters != null) {
+			receivedTokens++;
+		}
+		return skipDepth == 0;
+	}
+	
+	/**
+	 * Must be called just after writing a field name.
+	 *
+	 * @return true if the value of the last written field name will be filtered out
+	 */
+	boolean isFieldValueExcluded() {
+		return skipDepth > 0 || _itemFilter == null;
+	}
+	
+	/**
+	 * Must be called between the start and the end of an object, before writing the property.
+	 *
+	 * @param name the name of a property of the current object
+	 * @return true if the property would be filtered out, along with its value
+	 */
+	boolean isPropertyExcluded(String name) {
+		if (skipDepth > 0) {
+			return true;
+		}
+		TokenFilter filter = _filterContext.getFilter();
+		if (filter == null) {
+			return true; //the whole object is filtered out
+		}
+		return filter != TokenFilter.INCLUDE_ALL && filter.includeProperty(name) == null;
+	}
+	
+	@Override
+	public void writeFieldName(String name) throws IOException {
+		if (receive()) {
+			super.writeFieldName(name);
+		}
+	}
+	
+	@Override
+	public void writeFieldName(SerializableString name) throws IOException {
+		if (receive()) {
+			super.writeFieldName(name);
+		}
+	}
+	
+	@Override
+	public void writeFieldId(long id) throws IOException {
+		if (skipDepth == 0) {
+			super.writeFieldId(id);
+		}
+	}
+	
+	@Override
+	public void copyCurrentStructure(JsonParser p) throws IOException {
+		JsonToken token = p.currentToken();
+		if (token == JsonToken.FIELD_NAME) {
+			writeFieldName(p.getCurrentName());
+			token = p.nextToken();
+			if (isFieldValueExcluded()) {
+				p.skipChildren();
+				return;
+			}
+		}
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+			if (skipDepth > 0 || _itemFilter == null) {
+				p.skipChildren();
+				return;
+			}
+			copyCurrentEvent(p);
+			JsonToken endToken = token == JsonToken.START_OBJECT ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+			while (p.nextToken() != endToken) {
+				copyCurrentStructure(p);
+			}
+			copyCurrentEvent(p);
+		} else {
+			copyCurrentEvent(p);
+		}
+	}
+	
+	//JsonGeneratorDelegate sends arrays directly to the delegate, bypassing the filter
+	
+	@Override
+	public void writeArray(int[] array, int offset, int length) throws IOException {
+		_verifyOffsets(array.length, offset, length);
+		writeStartArray(array, length);
+		for (int i = offset, end = offset + length; i < end; i++) {
+			writeNumber(array[i]);
+		}
+		writeEndArray();
+	}
+	
+	@Override
+	public void writeArray(long[] array, int offset, int length) throws IOException {
+		_verifyOffsets(array.length, offset, length);
+		writeStartArray(array, length);
+		for (int i = offset, end = offset + length; i < end; i++) {
+			writeNumber(array[i]);
+		}
+		writeEndArray();
+	}
+	
+	@Override
+	public void writeArray(double[] array, int offset, int length) throws IOException {
+		_verifyOffsets(array.length, offset, length);
+		writeStartArray(array, length);
+		for (int i = offset, end = offset + length; i < end; i++) {
+			writeNumber(array[i]);
+		}
+		writeEndArray();
+	}
+	
+	@Override
+	public void writeArray(String[] array, int offset, int length) throws IOException {
+		_verifyOffsets(array.length, offset, length);
+		writeStartArray(array, length);
+		for (int i = offset, end = offset + length; i < end; i++) {
+			writeString(array[i]);
+		}
+		writeEndArray();
+	}
+	
+	@Override
+	public void writeString(String text) throws IOException {
+		if (receive()) {
+			super.writeString(text);
+		}
+	}
+	
+	@Override
+	public void writeString(char[] text, int offset, int len) throws IOException {
+		if (receive()) {
+			super.writeString(text, offset, len);
+		}
+	}
+	
+	@Override
+	public void writeString(SerializableString text) throws IOException {
+		if (receive()) {
+			super.writeString(text);
+		}
+	}
+	
+	@Override
+	public void writeString(Reader reader, int len) throws IOException {
+		if (receive()) {
+			super.writeString(reader, len);
+		}
+	}
+	
+	@Override
+	public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+		if (receive()) {
+			super.writeRawUTF8String(text, offset, length);
+		}
+	}
+	
+	@Override
+	public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+		if (receive()) {
+			super.writeUTF8String(text, offset, length);
+		}
+	}
+	
+	@Override
+	public void writeRaw(String text) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRaw(text);
+		}
+	}
+	
+	@Override
+	public void writeRaw(String text, int offset, int len) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRaw(text, offset, len);
+		}
+	}
+	
+	@Override
+	public void writeRaw(SerializableString text) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRaw(text);
+		}
+	}
+	
+	@Override
+	public void writeRaw(char[] text, int offset, int len) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRaw(text, offset, len);
+		}
+	}
+	
+	@Override
+	public void writeRaw(char c) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRaw(c);
+		}
+	}
+	
+	@Override
+	public void writeRawValue(String text) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRawValue(text);
+		}
+	}
+	
+	@Override
+	public void writeRawValue(String text, int offset, int len) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRawValue(text, offset, len);
+		}
+	}
+	
+	@Override
+	public void writeRawValue(char[] text, int offset, int len) throws IOException {
+		if (skipDepth == 0) {
+			super.writeRawValue(text, offset, len);
+		}
+	}
+	
+	@Override
+	public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException {
+		if (receive()) {
+			super.writeBinary(b64variant, data, offset, len);
+		}
+	}
+	
+	@Override
+	public int writeBinary(Base64Variant b64variant, InputStream data, int dataLength) throws IOException {
+		if (receive()) {
+			return super.writeBinary(b64variant, data, dataLength);
+		}
+		return -1;
+	}
+	
+	@Override
+	public void writeNumber(short v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(int v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(long v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(BigInteger v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(double v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(float v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(BigDecimal v) throws IOException {
+		if (receive()) {
+			super.writeNumber(v);
+		}
+	}
+	
+	@Override
+	public void writeNumber(String encodedValue) throws IOException {
+		if (receive()) {
+			super.writeNumber(encodedValue);
+		}
+	}
+	
+	@Override
+	public void writeNumber(char[] encodedValueBuffer, int offset, int length) throws IOException {
+		if (receive()) {
+			super.writeNumber(encodedValueBuffer, offset, length);
+		}
+	}
+	
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		if (receive()) {
+			super.writeBoolean(v);
+		}
+	}
+	
+	@Override
+	public void writeNull() throws IOException {
+		if (receive()) {
+			super.writeNull();
+		}
+	}
+	
+	@Override
+	public void writeOmittedField(String fieldName) throws IOException {
+		if (skipDepth == 0) {
+			super.writeOmittedField(fieldName);
+		}
+	}
+	
+	@Override
+	public void writeObjectId(Object id) throws IOException {
+		if (skipDepth == 0) {
+			super.writeObjectId(id);
+		}
+	}
+	
+	@Override
+	public void writeObjectRef(Object id) throws IOException {
+		if (skipDepth == 0) {
+			super.writeObjectRef(id);
+		}
+	}
+	
+	@Override
+	public void writeTypeId(Object id) throws IOException {
+		if (skipDepth == 0) {
+			super.writeTypeId(id);
+		}
+	}
+	
+	@Override
+	public void writeEmbeddedObject(Object object) throws IOException {
+		if (receive()) {
+			super.writeEmbeddedObject(object);
+		}
+	}
+	
 	@Override
 	public void close() throws IOException {
-		if (getMatchCount() == 0) {
+		if (counters != null && !delegate.isClosed()) {
+			counters.add(receivedTokens, ((CountingJsonGenerator) delegate).getTokenCount());
+		}
+		if (getMatchCount() == 0 && rootIsArray != null) { //nothing to do for an empty or scalar input
 			if (rootIsArray) {
 				delegate.writeStartArray();
 				delegate.writeEndArray();
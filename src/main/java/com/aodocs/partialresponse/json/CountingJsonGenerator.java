@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+
+/**
+ * Counts the tokens written to the underlying generator, used by {@link FilteringCounters}.
+ * Raw content is not counted.
+ */
+class CountingJsonGenerator extends JsonGeneratorDelegate {
+	
+	private long tokenCount;
+	
+	CountingJsonGenerator(JsonGenerator delegate) {
+		super(delegate, false);
+	}
+	
+	long getTokenCount() {
+		return tokenCount;
+	}
+	
+	@Override
+	public void writeStartArray() throws IOException {
+		tokenCount++;
+		delegate.writeStartArray();
+	}
+	
+	@Override
+	public void writeStartArray(int size) throws IOException {
+		tokenCount++;
+		delegate.writeStartArray(size);
+	}
+	
+	@Override
+	public void writeStartArray(Object forValue) throws IOException {
+		tokenCount++;
+		delegate.writeStartArray(forValue);
+	}
+	
+	@Override
+	public void writeStartArray(Object forValue, int size) throws IOException {
+		tokenCount++;
+		delegate.writeStartArray(forValue, size);
+	}
+	
+	@Override
+	public void writeEndArray() throws IOException {
+		tokenCount++;
+		delegate.writeEndArray();
+	}
+	
+	@Override
+	public void writeStartObject() throws IOException {
+		tokenCount++;
+		delegate.writeStartObject();
+	}
+	
+	@Override
+	public void writeStartObject(Object forValue) throws IOException {
+		tokenCount++;
+		delegate.writeStartObject(forValue);
+	}
+	
+	@Override
+	public void writeStartObject(Object forValue, int size) throws IOException {
+		tokenCount++;
+		delegate.writeStartObject(forValue, size);
+	}
+	
+	@Override
+	public void writeEndObject() throws IOException {
+		tokenCount++;
+		delegate.writeEndObject();
+	}
+	
+	@Override
+	public void writeFieldName(String name) throws IOException {
+		tokenCount++;
+		delegate.writeFieldName(name);
+	}
+	
+	@Override
+	public void writeFieldName(SerializableString name) throws IOException {
+		tokenCount++;
+		delegate.writeFieldName(name);
+	}
+	
+	@Override
+	public void writeString(String text) throws IOException {
+		tokenCount++;
+		delegate.writeString(text);
+	}
+	
+	@Override
+	public void writeString(char[] text, int offset, int len) throws IOException {
+		tokenCount++;
+		delegate.writeString(text, offset, len);
+	}
+	
+	@Override
+	public void writeString(SerializableString text) throws IOException {
+		tokenCount++;
+		delegate.writeString(text);
+	}
+	
+	@Override
+	public void writeString(Reader reader, int len) throws IOException {
+		tokenCount++;
+		delegate.writeString(reader, len);
+	}
+	
+	@Override
+	public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+		tokenCount++;
+		delegate.writeRawUTF8String(text, offset, length);
+	}
+	
+	@Override
+	public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+		tokenCount++;
+		delegate.writeUTF8String(text, offset, length);
+	}
+	
+	@Override
+	public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException {
+		tokenCount++;
+		delegate.writeBinary(b64variant, data, offset, len);
+	}
+	
+	@Override
+	public int writeBinary(Base64Variant b64variant, InputStream data, int dataLength) throws IOException {
+		tokenCount++;
+		return delegate.writeBinary(b64variant, data, dataLength);
+	}
+	
+	@Override
+	public void writeNumber(short v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(int v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(long v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(BigInteger v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(double v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(float v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(BigDecimal v) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(v);
+	}
+	
+	@Override
+	public void writeNumber(String encodedValue) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(encodedValue);
+	}
+	
+	@Override
+	public void writeNumber(char[] encodedValueBuffer, int offset, int length) throws IOException {
+		tokenCount++;
+		delegate.writeNumber(encodedValueBuffer, offset, length);
+	}
+	
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		tokenCount++;
+		delegate.writeBoolean(v);
+	}
+	
+	@Override
+	public void writeNull() throws IOException {
+		tokenCount++;
+		delegate.writeNull();
+	}
+	
+	@Override
+	public void writeEmbeddedObject(Object object) throws IOException {
+		tokenCount++;
+		delegate.writeEmbeddedObject(object);
+	}
+	
+}
@@ -0,0 +1,262 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.google.common.base.Equivalence;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Immutable state machine compiled from a {@link FieldsExpressionTree}, used to filter JSON properties.
+ * 
+ * Each state is a {@link TokenFilter} standing for the set of filter nodes matching the current JSON path
+ * (several nodes when a wildcard and a named node both match). All transitions are computed once at
+ * compilation: the transition for a property name is a hash lookup returning a shared state,
+ * and names not present in the lookup table follow the wildcard transition.
+ * 
+ * Compiled automatons are cached for each tree instance, and can be shared between threads.
+ */
+final class FilterAutomaton {
+	
+	private static final Equivalence<Object> IDENTITY = Equivalence.identity();
+	
+	private static final LoadingCache<FieldsExpressionTree, FilterAutomaton> AUTOMATON_CACHE = CacheBuilder.newBuilder()
+			.weakKeys() //trees are compared by identity, and automatons are dropped with their tree
+			.build(CacheLoader.from(FilterAutomaton::new));
+	
+	/**
+	 * @param filterTree a filter tree
+	 * @return the compiled automaton for this tree
+	 */
+	static FilterAutomaton compile(FieldsExpressionTree filterTree) {
+		return AUTOMATON_CACHE.getUnchecked(filterTree);
+	}
+	
+	private final TokenFilter rootFilter;
+	private final int stateCount;
+	
+	private FilterAutomaton(FieldsExpressionTree filterTree) {
+		Compiler compiler = new Compiler();
+		this.rootFilter = compiler.getFilter(StateKey.of(filterTree.getRoot()));
+		compiler.linkAll();
+		this.stateCount = compiler.states.size();
+	}
+	
+	/**
+	 * @return the filter to use for the root value
+	 */
+	TokenFilter getRootFilter() {
+		return rootFilter;
+	}
+	
+	/**
+	 * @return the number of distinct states of this automaton
+	 */
+	int getStateCount() {
+		return stateCount;
+	}
+	
+	/**
+	 * A state of the automaton. Transitions are set once during compilation, and never modified afterwards.
+	 */
+	static final class State extends TokenFilter {
+		
+		private final boolean includeScalar;
+		private Map<String, TokenFilter> namedTransitions;
+		private TokenFilter wildcardTransition;
+		
+		private State(boolean includeScalar) {
+			this.includeScalar = includeScalar;
+		}
+		
+		@Override
+		public TokenFilter includeProperty(String name) {
+			TokenFilter next = namedTransitions.get(name);
+			return next != null ? next : wildcardTransition;
+		}
+		
+		/**
+		 * Include values only if :
+		 * - there are no more filters to be applied downstream
+		 * - it is middle wildcard
+		 * - several filter nodes match the current path
+		 *
+		 * @return true if scalar values are included
+		 */
+		@Override
+		protected boolean _includeScalar() {
+			return includeScalar;
+		}
+		
+	}
+	
+	/**
+	 * Builds all states reachable from the root state, each state being created only once.
+	 */
+	private static class Compiler {
+		
+		private final Map<StateKey, TokenFilter> states = new HashMap<>();
+		private final Deque<StateKey> unlinkedStates = new ArrayDeque<>();
+		
+		private TokenFilter getFilter(StateKey key) {
+			if (key.isEmpty()) {
+				return null;
+			}
+			if (key.isIncludeAllOnly()) {
+				return TokenFilter.INCLUDE_ALL;
+			}
+			TokenFilter filter = states.get(key);
+			if (filter == null) {
+				State state = new State(key.includesScalar());
+				states.put(key, state);
+				unlinkedStates.add(key);
+				filter = state;
+			}
+			return filter;
+		}
+		
+		private void linkAll() {
+			while (!unlinkedStates.isEmpty()) {
+				StateKey key = unlinkedStates.poll();
+				link(key, (State) states.get(key));
+			}
+		}
+		
+		private void link(StateKey key, State state) {
+			//names not explicitly present in a filter node only match wildcards
+			state.wildcardTransition = getFilter(key.next(null));
+			ImmutableMap.Builder<String, TokenFilter> namedTransitions = ImmutableMap.builder();
+			for (String name : key.childNames()) {
+				namedTransitions.put(name, getFilter(key.next(name)));
+			}
+			state.namedTransitions = namedTransitions.build();
+		}
+		
+	}
+	
+	/**
+	 * Identifies a state: the set of matching filter nodes (compared by identity),
+	 * and whether some previous node already includes everything below.
+	 */
+	private static final class StateKey {
+		
+		private final ImmutableSet<Equivalence.Wrapper<Object>> nodes;
+		private final boolean includeAll;
+		
+		private StateKey(ImmutableSet<Equivalence.Wrapper<Object>> nodes, boolean includeAll) {
+			this.nodes = nodes;
+			this.includeAll = includeAll;
+		}
+		
+		static StateKey of(FieldsExpressionNode node) {
+			return new StateKey(ImmutableSet.of(IDENTITY.wrap(node)), false);
+		}
+		
+		boolean isEmpty() {
+			return nodes.isEmpty() && !includeAll;
+		}
+		
+		boolean isIncludeAllOnly() {
+			return nodes.isEmpty() && includeAll;
+		}
+		
+		boolean includesScalar() {
+			if (nodes.size() + (includeAll ? 1 : 0) > 1) {
+				return true; //multiple filters include all scalars
+			}
+			FieldsExpressionNode node = node(nodes.iterator().next());
+			return node.isWildcard() || node.isTransitiveLeaf();
+		}
+		
+		Set<String> childNames() {
+			Set<String> names = new LinkedHashSet<>();
+			for (Equivalence.Wrapper<Object> wrapper : nodes) {
+				FieldsExpressionNode node = node(wrapper);
+				if (!node.isTransitiveLeaf()) {
+					for (Map.Entry<String, FieldsExpressionNode> child : node.getChildMap().entrySet()) {
+						if (!child.getValue().isWildcard()) {
+							names.add(child.getKey());
+						}
+					}
+				}
+			}
+			return names;
+		}
+		
+		/**
+		 * @param name a property name, or null for a name that is not explicitly present in filter nodes
+		 * @return the key of the next state
+		 */
+		StateKey next(String name) {
+			boolean nextIncludeAll = includeAll;
+			ImmutableSet.Builder<Equivalence.Wrapper<Object>> nextNodes = ImmutableSet.builder();
+			for (Equivalence.Wrapper<Object> wrapper : nodes) {
+				FieldsExpressionNode node = node(wrapper);
+				//leafs match anything below
+				if (node.isTransitiveLeaf()) {
+					nextIncludeAll = true;
+				} else {
+					Collection<FieldsExpressionNode> children = node.getChildMap().values();
+					for (FieldsExpressionNode child : children) {
+						if (child.isWildcard() || (name != null && child.matches(name))) {
+							nextNodes.add(IDENTITY.wrap(child));
+						}
+					}
+				}
+			}
+			return new StateKey(nextNodes.build(), nextIncludeAll);
+		}
+		
+		private static FieldsExpressionNode node(Equivalence.Wrapper<Object> wrapper) {
+			return (FieldsExpressionNode) wrapper.get();
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof StateKey))
+				return false;
+			StateKey that = (StateKey) o;
+			return includeAll == that.includeAll && nodes.equals(that.nodes);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(nodes, includeAll);
+		}
+	}
+	
+}
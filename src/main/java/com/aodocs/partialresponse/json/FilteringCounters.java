@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+/**
+ * Collects the number of JSON tokens written and excluded by the filtering generators created
+ * by the current thread, between {@link #start()} and {@link #stop()}.
+ * 
+ * Tokens are only counted while collecting: the output of filtering generators created on other threads,
+ * or outside of a collection, is not counted.
+ */
+public final class FilteringCounters {
+	
+	private static final ThreadLocal<FilteringCounters> CURRENT = new ThreadLocal<>();
+	
+	/**
+	 * Starts collecting the counts of the filtering generators created by the current thread.
+	 *
+	 * @return the counters, to be stopped in a finally block
+	 */
+	public static FilteringCounters start() {
+		FilteringCounters counters = new FilteringCounters();
+		CURRENT.set(counters);
+		return counters;
+	}
+	
+	static FilteringCounters current() {
+		return CURRENT.get();
+	}
+	
+	private long tokensWritten;
+	private long tokensExcluded;
+	
+	private FilteringCounters() {
+	}
+	
+	/**
+	 * Stops collecting, generators created afterwards are not counted.
+	 */
+	public void stop() {
+		if (CURRENT.get() == this) {
+			CURRENT.remove();
+		}
+	}
+	
+	/**
+	 * Called when a counted generator is closed.
+	 */
+	void add(long tokensReceived, long tokensWritten) {
+		this.tokensWritten += tokensWritten;
+		this.tokensExcluded += Math.max(0, tokensReceived - tokensWritten);
+	}
+	
+	/**
+	 * @return the number of tokens written to the output by closed generators
+	 */
+	public long getTokensWritten() {
+		return tokensWritten;
+	}
+	
+	/**
+	 * @return the number of tokens filtered out by closed generators
+	 */
+	public long getTokensExcluded() {
+		return tokensExcluded;
+	}
+	
+}
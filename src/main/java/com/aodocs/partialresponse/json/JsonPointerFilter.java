@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable filter compiled from a comma-separated list of <a href="https://tools.ietf.org/html/rfc6901">JSON Pointers</a>,
+ * selecting the union of the pointed subtrees.
+ * 
+ * Pointers are merged in a trie, each node being a shared TokenFilter: unlike JsonPointerBasedFilter,
+ * no filter is allocated while writing. Compiled filters are cached by expression, and can be shared between threads.
+ * The expression is a list only if every comma-separated part starts with a /, otherwise it is a single pointer:
+ * "/a,b" selects the property "a,b", while "/a,/b" selects both "a" and "b".
+ */
+final class JsonPointerFilter extends TokenFilter {
+	
+	private static final Splitter POINTER_SPLITTER = Splitter.on(',');
+	
+	private static final Cache<String, TokenFilter> FILTER_CACHE = CacheBuilder.newBuilder()
+			.maximumSize(1000)
+			.build();
+	
+	/**
+	 * @param jsonPointers a JSON Pointer, or a comma-separated list of JSON Pointers, each starting with a /
+	 * @return the compiled filter for this expression
+	 * @throws IllegalArgumentException if a pointer is invalid
+	 */
+	static TokenFilter compile(String jsonPointers) {
+		//invalid expressions throw before being cached
+		TokenFilter filter = FILTER_CACHE.getIfPresent(jsonPointers);
+		if (filter == null) {
+			filter = parse(jsonPointers);
+			FILTER_CACHE.put(jsonPointers, filter);
+		}
+		return filter;
+	}
+	
+	private static TokenFilter parse(String jsonPointers) {
+		Builder root = new Builder(-1);
+		List<String> pointerList = POINTER_SPLITTER.splitToList(jsonPointers);
+		if (!pointerList.stream().allMatch(jsonPointer -> jsonPointer.startsWith("/"))) {
+			pointerList = Collections.singletonList(jsonPointers); //commas are part of a property name
+		}
+		for (String jsonPointer : pointerList) {
+			Preconditions.checkArgument(jsonPointer.startsWith("/"), "Invalid JSON Pointer '%s'", jsonPointer);
+			Builder builder = root;
+			for (JsonPointer segment = JsonPointer.compile(jsonPointer); !segment.matches(); segment = segment.tail()) {
+				builder = builder.getOrAddChild(segment.getMatchingProperty(), segment.getMatchingIndex());
+			}
+			builder.terminal = true;
+		}
+		return root.build();
+	}
+	
+	/**
+	 * Returned for unselected array elements instead of null, as FilteringGeneratorDelegate does not create
+	 * a context for an object element excluded by its array filter, and then fails on its first property.
+	 */
+	private static final JsonPointerFilter EXCLUDED_ELEMENT = new JsonPointerFilter(ImmutableMap.of(), ImmutableMap.of());
+	
+	private final ImmutableMap<String, TokenFilter> propertyFilters;
+	private final ImmutableMap<Integer, TokenFilter> elementFilters;
+	
+	private JsonPointerFilter(ImmutableMap<String, TokenFilter> propertyFilters,
+			ImmutableMap<Integer, TokenFilter> elementFilters) {
+		this.propertyFilters = propertyFilters;
+		this.elementFilters = elementFilters;
+	}
+	
+	@Override
+	public TokenFilter includeProperty(String name) {
+		return propertyFilters.get(name);
+	}
+	
+	@Override
+	public TokenFilter includeElement(int index) {
+		TokenFilter filter = elementFilters.get(index);
+		return filter != null ? filter : EXCLUDED_ELEMENT;
+	}
+	
+	/**
+	 * Values are only included at the end of a pointer, which is compiled to INCLUDE_ALL.
+	 */
+	@Override
+	protected boolean _includeScalar() {
+		return false;
+	}
+	
+	private static final class Builder {
+		
+		private final int index;
+		private final Map<String, Builder> children = new HashMap<>();
+		private boolean terminal;
+		
+		/**
+		 * @param index the array index matched by this node, or -1 if it only matches a property name
+		 */
+		private Builder(int index) {
+			this.index = index;
+		}
+		
+		private Builder getOrAddChild(String name, int index) {
+			return children.computeIfAbsent(name, key -> new Builder(index));
+		}
+		
+		private TokenFilter build() {
+			if (terminal) {
+				return TokenFilter.INCLUDE_ALL; //a pointer selects the whole subtree, including longer pointers
+			}
+			ImmutableMap.Builder<String, TokenFilter> propertyFilters = ImmutableMap.builder();
+			ImmutableMap.Builder<Integer, TokenFilter> elementFilters = ImmutableMap.builder();
+			for (Map.Entry<String, Builder> child : children.entrySet()) {
+				TokenFilter childFilter = child.getValue().build();
+				propertyFilters.put(child.getKey(), childFilter);
+				if (child.getValue().index >= 0) {
+					elementFilters.put(child.getValue().index, childFilter);
+				}
+			}
+			return new JsonPointerFilter(propertyFilters.build(), elementFilters.build());
+		}
+		
+	}
+	
+}
@@ -25,31 +25,54 @@ import java.io.Writer;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.filter.JsonPointerBasedFilter;
+import com.fasterxml.jackson.core.filter.TokenFilter;
 import com.fasterxml.jackson.core.io.IOContext;
 
+/**
+ * Wraps a JsonFactory to generate JsonGenerators that only output the subtrees selected
+ * by a comma-separated list of JSON Pointers (see {@link JsonPointerFilter}).
+ * Instances are immutable, and can be reused for all requests using the same pointers.
+ * The compiled filters are cached, and shared by the instances using the same pointers.
+ */
 public class JsonPointerJsonFactory extends JsonFactory {
 	
-	private final String jsonPointer;
+	/**
+	 * @param jsonPointer a comma-separated list of JSON Pointers
+	 * @return true if all pointers are valid
+	 */
+	public static boolean isValidPointer(String jsonPointer) {
+		try {
+			JsonPointerFilter.compile(jsonPointer);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+	
+	private final TokenFilter filter;
 	
+	/**
+	 * @param base the factory to wrap
+	 * @param jsonPointer a comma-separated list of JSON Pointers
+	 * @throws IllegalArgumentException if a pointer is invalid
+	 */
 	public JsonPointerJsonFactory(JsonFactory base, String jsonPointer) {
 		super(base, null);
-		this.jsonPointer = jsonPointer;
+		this.filter = JsonPointerFilter.compile(jsonPointer);
 	}
 	
 	@Override
 	protected JsonGenerator _createGenerator(Writer out, IOContext ctxt) throws IOException {
-		return createJsonPointerGenerator(super._createGenerator(out, ctxt), jsonPointer);
+		return createJsonPointerGenerator(super._createGenerator(out, ctxt));
 	}
 	
 	@Override
 	protected JsonGenerator _createUTF8Generator(OutputStream out, IOContext ctxt) throws IOException {
-		return createJsonPointerGenerator(super._createUTF8Generator(out, ctxt), jsonPointer);
+		return createJsonPointerGenerator(super._createUTF8Generator(out, ctxt));
 	}
 	
-	private JsonGenerator createJsonPointerGenerator(JsonGenerator delegate, String jsonPointer) {
-		return new AbstractFilteringGenerator(delegate,
-				new JsonPointerBasedFilter(jsonPointer), true, true);
+	private JsonGenerator createJsonPointerGenerator(JsonGenerator delegate) {
+		return new AbstractFilteringGenerator(delegate, filter, true, true);
 	}
 	
 }
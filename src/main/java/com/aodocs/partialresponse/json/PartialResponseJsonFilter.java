@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+
+/**
+ * Filters already serialized JSON according to a provided FieldsExpressionTree filter,
+ * without binding it to objects. Values of excluded fields are skipped by the parser, not copied.
+ *
+ * Instances are immutable and thread-safe.
+ */
+public final class PartialResponseJsonFilter {
+	
+	private static final JsonFactory DEFAULT_JSON_FACTORY = new JsonFactory();
+	
+	private final JsonFactory jsonFactory;
+	private final FieldsExpressionTree filterTree;
+	
+	public PartialResponseJsonFilter(FieldsExpressionTree filterTree) {
+		this(DEFAULT_JSON_FACTORY, filterTree);
+	}
+	
+	public PartialResponseJsonFilter(JsonFactory jsonFactory, FieldsExpressionTree filterTree) {
+		this.jsonFactory = Preconditions.checkNotNull(jsonFactory, "jsonFactory cannot be null");
+		this.filterTree = Preconditions.checkNotNull(filterTree, "filterTree cannot be null");
+	}
+	
+	/**
+	 * Filters JSON from an input stream to an output stream, as UTF-8. None of the streams are closed.
+	 *
+	 * @param input the JSON to filter
+	 * @param output where the filtered JSON is written
+	 * @throws IOException if the input is not valid JSON, or on I/O error
+	 */
+	public void filter(InputStream input, OutputStream output) throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(input)) {
+			copy(parser, output);
+		}
+	}
+	
+	/**
+	 * Filters JSON from a byte array to an output stream, as UTF-8. The output stream is not closed.
+	 *
+	 * @param input the JSON to filter
+	 * @param output where the filtered JSON is written
+	 * @throws IOException if the input is not valid JSON, or on I/O error
+	 */
+	public void filter(byte[] input, OutputStream output) throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(input)) {
+			copy(parser, output);
+		}
+	}
+	
+	/**
+	 * @param input the JSON to filter
+	 * @return the filtered JSON, as UTF-8
+	 * @throws IOException if the input is not valid JSON
+	 */
+	public byte[] filter(byte[] input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(input.length);
+		filter(input, output);
+		return output.toByteArray();
+	}
+	
+	private void copy(JsonParser parser, OutputStream output) throws IOException {
+		parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		try (PartialResponseJsonGenerator generator = new PartialResponseJsonGenerator(
+				jsonFactory.createGenerator(output).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET),
+				filterTree)) {
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				generator.copyCurrentEvent(parser);
+				if (token == JsonToken.FIELD_NAME && generator.isFieldValueExcluded()) {
+					parser.nextToken();
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+	
+}
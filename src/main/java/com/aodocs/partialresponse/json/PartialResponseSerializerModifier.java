@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.SerializerFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Jackson BeanSerializerModifier that skips the properties filtered out by a {@link PartialResponseJsonFactory}
+ * or a {@link JsonPointerJsonFactory}, without calling their getters. Computed or lazily loaded properties
+ * are then only evaluated when they are requested.
+ * 
+ * Properties of beans serialized with another generator are written as usual. Only standard property writers
+ * are modified: writers customized by other modifiers, unwrapped properties and "any getters" are always evaluated.
+ * 
+ * The modifier can be registered on an ObjectMapper (for instance using a SimpleModule),
+ * or applied to an existing ObjectWriter with {@link #skipExcludedProperties(ObjectWriter)}.
+ */
+public class PartialResponseSerializerModifier extends BeanSerializerModifier {
+	
+	private static final PartialResponseSerializerModifier INSTANCE = new PartialResponseSerializerModifier();
+	
+	//serializers built with the modifier must not be mixed with the ones of the base provider
+	private static final Cache<DefaultSerializerProvider, SkippingSerializers> SERIALIZERS_CACHE = CacheBuilder.newBuilder()
+			.weakKeys() //providers are compared by identity, and copies are dropped with their ObjectMapper
+			.build();
+	
+	/**
+	 * Returns a writer serializing values like the provided writer, with this modifier applied to bean serializers.
+	 * Serializers are cached separately from the ones of the ObjectMapper of the writer.
+	 * 
+	 * @param writer the writer to modify
+	 * @return a new writer that skips the excluded properties
+	 */
+	public static ObjectWriter skipExcludedProperties(ObjectWriter writer) {
+		return writer instanceof SkippingObjectWriter ? writer : new SkippingObjectWriter(writer);
+	}
+	
+	@Override
+	public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc,
+			List<BeanPropertyWriter> beanProperties) {
+		for (int i = 0; i < beanProperties.size(); i++) {
+			BeanPropertyWriter property = beanProperties.get(i);
+			if (property.getClass() == BeanPropertyWriter.class) {
+				beanProperties.set(i, new SkippingPropertyWriter(property));
+			}
+		}
+		return beanProperties;
+	}
+	
+	/**
+	 * Writes the property only if the filtering generator would not exclude it.
+	 */
+	static final class SkippingPropertyWriter extends BeanPropertyWriter {
+		
+		private SkippingPropertyWriter(BeanPropertyWriter base) {
+			super(base);
+		}
+		
+		private SkippingPropertyWriter(BeanPropertyWriter base, PropertyName name) {
+			super(base, name);
+		}
+		
+		@Override
+		protected BeanPropertyWriter _new(PropertyName newName) {
+			return new SkippingPropertyWriter(this, newName);
+		}
+		
+		@Override
+		public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+			if (gen instanceof AbstractFilteringGenerator && ((AbstractFilteringGenerator) gen).isPropertyExcluded(getName())) {
+				return;
+			}
+			super.serializeAsField(bean, gen, prov);
+		}
+		
+	}
+	
+	private static final class SkippingSerializers {
+		
+		private final DefaultSerializerProvider provider;
+		private final SerializerFactory factory;
+		
+		private SkippingSerializers(DefaultSerializerProvider baseProvider, SerializerFactory baseFactory) {
+			this.provider = baseProvider.copy(); //the copy has its own serializer cache
+			this.factory = baseFactory.withSerializerModifier(INSTANCE);
+		}
+		
+	}
+	
+	/**
+	 * ObjectWriter using serializers created with the modifier.
+	 */
+	private static final class SkippingObjectWriter extends ObjectWriter {
+		
+		private SkippingObjectWriter(ObjectWriter base) {
+			super(base, base.getConfig());
+		}
+		
+		private SkippingObjectWriter(ObjectWriter base, JsonFactory factory) {
+			super(base, factory);
+		}
+		
+		private SkippingObjectWriter(ObjectWriter base, SerializationConfig config) {
+			super(base, config);
+		}
+		
+		private SkippingObjectWriter(ObjectWriter base, SerializationConfig config,
+				GeneratorSettings generatorSettings, Prefetch prefetch) {
+			super(base, config, generatorSettings, prefetch);
+		}
+		
+		@Override
+		protected ObjectWriter _new(ObjectWriter base, JsonFactory factory) {
+			return new SkippingObjectWriter(base, factory);
+		}
+		
+		@Override
+		protected ObjectWriter _new(ObjectWriter base, SerializationConfig config) {
+			return config == _config ? this : new SkippingObjectWriter(base, config);
+		}
+		
+		@Override
+		protected ObjectWriter _new(GeneratorSettings generatorSettings, Prefetch prefetch) {
+			if (_generatorSettings == generatorSettings && _prefetch == prefetch) {
+				return this;
+			}
+			return new SkippingObjectWriter(this, _config, generatorSettings, prefetch);
+		}
+		
+		@Override
+		protected DefaultSerializerProvider _serializerProvider() {
+			SkippingSerializers serializers;
+			try {
+				serializers = SERIALIZERS_CACHE.get(_serializerProvider,
+						() -> new SkippingSerializers(_serializerProvider, _serializerFactory));
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause()); //creation does not throw checked exceptions
+			}
+			return serializers.provider.createInstance(_config, serializers.factory);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.metrics;
+
+/**
+ * Measures of the serialization of a filtered response.
+ */
+public final class FilteredResponseStats {
+	
+	private final long nanos;
+	private final long bytesWritten;
+	private final long unfilteredBytes;
+	private final long tokensWritten;
+	private final long tokensExcluded;
+	
+	public FilteredResponseStats(long nanos, long bytesWritten, long unfilteredBytes, long tokensWritten, long tokensExcluded) {
+		this.nanos = nanos;
+		this.bytesWritten = bytesWritten;
+		this.unfilteredBytes = unfilteredBytes;
+		this.tokensWritten = tokensWritten;
+		this.tokensExcluded = tokensExcluded;
+	}
+	
+	/**
+	 * @return the time to serialize and filter the response
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+	
+	/**
+	 * @return the size of the filtered response body
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	/**
+	 * @return the size of the response body without filtering, or -1 if it was not measured for this response
+	 */
+	public long getUnfilteredBytes() {
+		return unfilteredBytes;
+	}
+	
+	/**
+	 * @return the number of JSON tokens written
+	 */
+	public long getTokensWritten() {
+		return tokensWritten;
+	}
+	
+	/**
+	 * @return the number of JSON tokens filtered out (tokens of properties skipped before serialization are not counted)
+	 */
+	public long getTokensExcluded() {
+		return tokensExcluded;
+	}
+	
+	@Override
+	public String toString() {
+		return "FilteredResponseStats{nanos=" + nanos + ", bytesWritten=" + bytesWritten
+				+ ", unfilteredBytes=" + unfilteredBytes + ", tokensWritten=" + tokensWritten
+				+ ", tokensExcluded=" + tokensExcluded + "}";
+	}
+	
+}
@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of positive values, with power of 2 buckets: percentiles are approximated
+ * by the upper bound of their bucket (at most twice the actual value).
+ */
+public final class Histogram {
+	
+	private static final int BUCKET_COUNT = 64;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * @param value a value, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		long positiveValue = Math.max(0, value);
+		//bucket i holds values in [2^(i-1), 2^i - 1], bucket 0 holds 0
+		buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(positiveValue));
+		count.increment();
+		sum.add(positiveValue);
+		max.accumulate(positiveValue);
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * @param percentile a percentile between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile, 0 if no value was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(getMax(), i == 0 ? 0 : (1L << i) - 1);
+			}
+		}
+		return getMax();
+	}
+	
+	@Override
+	public String toString() {
+		long total = getCount();
+		return "count=" + total + " mean=" + (total == 0 ? 0 : getSum() / total)
+				+ " p50=" + getPercentile(50) + " p99=" + getPercentile(99) + " max=" + getMax();
+	}
+	
+}
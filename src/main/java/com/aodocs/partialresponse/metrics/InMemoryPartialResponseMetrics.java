@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Keeps histograms of all measures in memory, for each API method. Recording a measure does not allocate
+ * once the method has been seen, except for rejected expressions, of which the last ones are kept.
+ * 
+ * The servlet exposes its instance as a servlet context attribute, {@link #dump()} gives a text report.
+ */
+public class InMemoryPartialResponseMetrics implements PartialResponseMetrics {
+	
+	private static final int REJECTED_EXPRESSIONS_KEPT = 10;
+	
+	private final Map<String, Supplier<CacheStats>> caches = new ConcurrentSkipListMap<>();
+	private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+	
+	@Override
+	public void registerCache(String cacheName, Supplier<CacheStats> stats) {
+		caches.put(cacheName, stats);
+	}
+	
+	@Override
+	public void expressionParsed(String methodName, long nanos) {
+		getOrCreateMethodMetrics(methodName).parseNanos.record(nanos);
+	}
+	
+	@Override
+	public void expressionValidated(String methodName, long nanos) {
+		getOrCreateMethodMetrics(methodName).validationNanos.record(nanos);
+	}
+	
+	@Override
+	public void expressionRejected(String methodName, String fieldsParameter) {
+		MethodMetrics metrics = getOrCreateMethodMetrics(methodName);
+		metrics.rejectedCount.increment();
+		synchronized (metrics.lastRejectedExpressions) {
+			if (metrics.lastRejectedExpressions.size() == REJECTED_EXPRESSIONS_KEPT) {
+				metrics.lastRejectedExpressions.removeFirst();
+			}
+			metrics.lastRejectedExpressions.addLast(fieldsParameter);
+		}
+	}
+	
+	@Override
+	public void responseFiltered(String methodName, FilteredResponseStats stats) {
+		MethodMetrics metrics = getOrCreateMethodMetrics(methodName);
+		metrics.filterNanos.record(stats.getNanos());
+		metrics.bytesWritten.record(stats.getBytesWritten());
+		if (stats.getUnfilteredBytes() >= 0) {
+			metrics.sampledBytesWritten.add(stats.getBytesWritten());
+			metrics.sampledUnfilteredBytes.add(stats.getUnfilteredBytes());
+		}
+		metrics.tokensWritten.add(stats.getTokensWritten());
+		metrics.tokensExcluded.add(stats.getTokensExcluded());
+	}
+	
+	private MethodMetrics getOrCreateMethodMetrics(String methodName) {
+		MethodMetrics metrics = methods.get(methodName);
+		return metrics != null ? metrics : methods.computeIfAbsent(methodName, name -> new MethodMetrics());
+	}
+	
+	/**
+	 * @param methodName an API method name
+	 * @return the metrics of this method, or null if nothing was recorded for it
+	 */
+	public MethodMetrics getMethodMetrics(String methodName) {
+		return methods.get(methodName);
+	}
+	
+	/**
+	 * @return a text report of all metrics, one line per measure
+	 */
+	public String dump() {
+		StringBuilder report = new StringBuilder();
+		caches.forEach((name, stats) -> report.append("cache ").append(name).append(": ")
+				.append(stats.get()).append('\n'));
+		new ConcurrentSkipListMap<>(methods).forEach((name, metrics) -> metrics.appendTo(name, report));
+		return report.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return dump();
+	}
+	
+	/**
+	 * Metrics of a single API method.
+	 */
+	public static final class MethodMetrics {
+		
+		private final Histogram parseNanos = new Histogram();
+		private final Histogram validationNanos = new Histogram();
+		private final Histogram filterNanos = new Histogram();
+		private final Histogram bytesWritten = new Histogram();
+		private final LongAdder sampledBytesWritten = new LongAdder();
+		private final LongAdder sampledUnfilteredBytes = new LongAdder();
+		private final LongAdder tokensWritten = new LongAdder();
+		private final LongAdder tokensExcluded = new LongAdder();
+		private final LongAdder rejectedCount = new LongAdder();
+		private final Deque<String> lastRejectedExpressions = new ArrayDeque<>(REJECTED_EXPRESSIONS_KEPT);
+		
+		private MethodMetrics() {
+		}
+		
+		public Histogram getParseNanos() {
+			return parseNanos;
+		}
+		
+		public Histogram getValidationNanos() {
+			return validationNanos;
+		}
+		
+		public Histogram getFilterNanos() {
+			return filterNanos;
+		}
+		
+		public Histogram getBytesWritten() {
+			return bytesWritten;
+		}
+		
+		/**
+		 * @return the ratio of bytes saved by filtering, measured on responses also serialized without filtering
+		 * (NaN if none was)
+		 */
+		public double getSavedBytesRatio() {
+			long unfiltered = sampledUnfilteredBytes.sum();
+			return unfiltered == 0 ? Double.NaN : 1 - (double) sampledBytesWritten.sum() / unfiltered;
+		}
+		
+		public long getTokensWritten() {
+			return tokensWritten.sum();
+		}
+		
+		public long getTokensExcluded() {
+			return tokensExcluded.sum();
+		}
+		
+		public long getRejectedCount() {
+			return rejectedCount.sum();
+		}
+		
+		/**
+		 * @return the last rejected fields parameters, oldest first
+		 */
+		public List<String> getLastRejectedExpressions() {
+			synchronized (lastRejectedExpressions) {
+				return new ArrayList<>(lastRejectedExpressions);
+			}
+		}
+		
+		private void appendTo(String methodName, StringBuilder report) {
+			String prefix = "method " + methodName + " ";
+			report.append(prefix).append("parseNanos: ").append(parseNanos).append('\n');
+			report.append(prefix).append("validationNanos: ").append(validationNanos).append('\n');
+			report.append(prefix).append("filterNanos: ").append(filterNanos).append('\n');
+			report.append(prefix).append("bytesWritten: ").append(bytesWritten).append('\n');
+			report.append(prefix).append("savedBytesRatio: ").append(getSavedBytesRatio()).append('\n');
+			report.append(prefix).append("tokens: written=").append(getTokensWritten())
+					.append(" excluded=").append(getTokensExcluded()).append('\n');
+			report.append(prefix).append("rejected: count=").append(getRejectedCount())
+					.append(" last=").append(getLastRejectedExpressions()).append('\n');
+		}
+		
+	}
+	
+}
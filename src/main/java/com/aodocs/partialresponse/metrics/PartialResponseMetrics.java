@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.metrics;
+
+import java.util.function.Supplier;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Receives measures from PartialResponseEndpointsServlet, for each API method.
+ * 
+ * Methods are called on request threads, implementations must be thread-safe and fast.
+ * All methods do nothing by default.
+ */
+public interface PartialResponseMetrics {
+	
+	/**
+	 * Ignores all measures.
+	 */
+	PartialResponseMetrics NO_OP = new PartialResponseMetrics() {
+	};
+	
+	/**
+	 * Called once at servlet init for each cache used by the servlet.
+	 *
+	 * @param cacheName the name of the cache
+	 * @param stats supplies the current statistics of the cache
+	 */
+	default void registerCache(String cacheName, Supplier<CacheStats> stats) {
+	}
+	
+	/**
+	 * @param methodName the API method name
+	 * @param nanos the time to get the parsed fields expression, including cache lookup
+	 */
+	default void expressionParsed(String methodName, long nanos) {
+	}
+	
+	/**
+	 * @param methodName the API method name
+	 * @param nanos the time to check the fields expression against the return type schema, including cache lookup
+	 */
+	default void expressionValidated(String methodName, long nanos) {
+	}
+	
+	/**
+	 * @param methodName the API method name
+	 * @param fieldsParameter the rejected fields parameter (invalid syntax, invalid selection or invalid JSON Pointer)
+	 */
+	default void expressionRejected(String methodName, String fieldsParameter) {
+	}
+	
+	/**
+	 * @param methodName the API method name
+	 * @param stats measures of the filtered response
+	 */
+	default void responseFiltered(String methodName, FilteredResponseStats stats) {
+	}
+	
+}
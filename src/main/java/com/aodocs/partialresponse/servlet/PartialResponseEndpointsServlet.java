@@ -20,12 +20,23 @@
 package com.aodocs.partialresponse.servlet;
 
 import com.aodocs.partialresponse.discovery.ResourceTreeRepository;
+import com.aodocs.partialresponse.discovery.ResourceTreeSnapshotCompiler;
+import com.aodocs.partialresponse.fieldsexpression.FieldExpressionParsingException;
 import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionCache;
 import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.aodocs.partialresponse.fieldsexpression.ParserType;
+import com.aodocs.partialresponse.fieldsexpression.SubtreeSharingStats;
+import com.aodocs.partialresponse.json.FilteringCounters;
 import com.aodocs.partialresponse.json.JsonPointerJsonFactory;
 import com.aodocs.partialresponse.json.PartialResponseJsonFactory;
+import com.aodocs.partialresponse.json.PartialResponseSerializerModifier;
+import com.aodocs.partialresponse.metrics.FilteredResponseStats;
+import com.aodocs.partialresponse.metrics.InMemoryPartialResponseMetrics;
+import com.aodocs.partialresponse.metrics.PartialResponseMetrics;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
 import com.google.api.server.spi.EndpointMethod;
 import com.google.api.server.spi.EndpointsContext;
 import com.google.api.server.spi.EndpointsServlet;
@@ -48,16 +59,36 @@ import com.google.api.server.spi.response.BadRequestException;
 import com.google.api.server.spi.response.RestResponseResultWriter;
 import com.google.api.server.spi.response.ResultWriter;
 import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 /**
  * Enables JSON partial response based on "fields" query parameter.
@@ -68,7 +99,8 @@ import javax.servlet.http.HttpServletRequest;
  * <a href="https://developers.google.com/discovery/v1/performance#partial-response">
  *     what is implemented in Google APIs</a></li>
  * <li>If fields expression starts with a /, the <a href="https://tools.ietf.org/html/rfc6901">JSON Pointer</a>
- * mode is enabled. It only allows a single node selection, and does not support wildcards</li>
+ * mode is enabled. Several pointers can be separated by commas to select the union of their nodes,
+ * wildcards are not supported</li>
  * </ul>
  * 
  * Initialization parameters:<ul>
@@ -77,24 +109,81 @@ import javax.servlet.http.HttpServletRequest;
  *  servlet init parameter to true.</li>
  * <li>The JSON pointer support is not enabled, set the "acceptJsonPointer" servlet init parameter to true
  * to activate it.</li>
+ * <li>Parsed fields expressions are cached. The cache can be tuned with the "fieldsExpressionCacheMaxEntries"
+ * (default 1000, 0 disables the cache), "fieldsExpressionCacheMaxLength" (default 2048 chars, longer expressions
+ * are not cached) and "fieldsExpressionCacheExpireAfterAccessSeconds" (default 3600) servlet init parameters.
+ * The same settings apply to the cache of filtering ObjectWriters, and to the cache of validation results
+ * when "checkFieldsExpression" is enabled.</li>
+ * <li>Fields expressions are parsed by a hand-written parser. The "fieldsExpressionParser" servlet init parameter
+ * can be set to "antlr" to use the Antlr generated parser instead.</li>
+ * <li>The resource trees built from the Discovery documents of each API version are cached. The cache is bounded
+ * by the "resourceTreeCacheMaxNodes" servlet init parameter (default 1000000 tree nodes), and entries can expire
+ * after "resourceTreeCacheExpireAfterAccessSeconds" (default 0, never). The bound is approximate: nodes shared with
+ * other API versions are counted in each of them, and are only released once no cached version uses them. Trees are read from the snapshots found in the
+ * classpath under "resourceTreeSnapshotPath" (default "META-INF/partial-response/"), see
+ * {@link ResourceTreeSnapshotCompiler}, and are otherwise built from the generated Discovery documents.</li>
+ * <li>When fields expressions are checked, the "warmUpResourceTrees" servlet init parameter can be set to true
+ * to build the resource trees of all methods during init, instead of on first request. Set "warmUpInBackground"
+ * to true to run the warm-up in a background thread, {@link #isWarmedUp()} tells when it is complete, and
+ * {@link #isWarmUpFailed()} if it failed. A failed warm-up in the init thread fails the servlet init.</li>
+ * <li>The getters of bean properties filtered out of the response are not called. Set the "skipExcludedProperties"
+ * servlet init parameter to false to always serialize all properties before filtering.</li>
+ * <li>Filtered responses are streamed to the servlet output stream. Set the "streamingFlushThreshold" servlet init
+ * parameter to a number of bytes to flush the output each time this amount is written, so that containers send
+ * large responses in chunks instead of buffering them. When Endpoints "addContentLength" is enabled, the filtered
+ * response is buffered once to compute its length.</li>
+ * <li>Metrics are not recorded by default. Set the "metrics" servlet init parameter to "inMemory" to record them
+ * in a {@link InMemoryPartialResponseMetrics}, or to the name of a {@link PartialResponseMetrics} implementation
+ * having a public no-arg constructor. The instance is available as the {@link #METRICS_ATTR_NAME} servlet context
+ * attribute. Set "metricsUnfilteredSizeSampling" to N to also serialize every Nth filtered response without
+ * filtering, to measure the saved bytes (default 0, never).</li>
  * </ul>
  * 
  * If the response is filtered by a standard fields expression (not using JSON Pointer), then
  * a {@link RequestedFields} instance is accessible with 
  * {@link PartialResponseEndpointsServlet#getRequestedFields}. This can be used by an API
  * implementation to perform optimization based on the requested fields.
+ * The field paths of the return type selected by the expression are also available with
+ * {@link PartialResponseEndpointsServlet#getRequestedProjection}.
  *
  */
 public class PartialResponseEndpointsServlet extends EndpointsServlet {
 
 	public static final String REQUESTED_FIELDS_ATTR_NAME = "endpoints.partialReponse.requestedFields";
+	public static final String REQUESTED_PROJECTION_ATTR_NAME = "endpoints.partialResponse.requestedProjection";
+	public static final String METRICS_ATTR_NAME = "endpoints.partialResponse.metrics";
 	
 	static final String ACCEPT_JSON_POINTER_INIT_PARAM = "acceptJsonPointer";
 	static final String CHECK_FIELDS_EXPRESSION_INIT_PARAM = "checkFieldsExpression";
+	static final String FIELDS_EXPRESSION_CACHE_MAX_ENTRIES_INIT_PARAM = "fieldsExpressionCacheMaxEntries";
+	static final String FIELDS_EXPRESSION_CACHE_MAX_LENGTH_INIT_PARAM = "fieldsExpressionCacheMaxLength";
+	static final String FIELDS_EXPRESSION_CACHE_EXPIRE_AFTER_ACCESS_INIT_PARAM = "fieldsExpressionCacheExpireAfterAccessSeconds";
+	static final String FIELDS_EXPRESSION_PARSER_INIT_PARAM = "fieldsExpressionParser";
+	static final String WARM_UP_RESOURCE_TREES_INIT_PARAM = "warmUpResourceTrees";
+	static final String WARM_UP_IN_BACKGROUND_INIT_PARAM = "warmUpInBackground";
+	static final String SKIP_EXCLUDED_PROPERTIES_INIT_PARAM = "skipExcludedProperties";
+	static final String RESOURCE_TREE_CACHE_MAX_NODES_INIT_PARAM = "resourceTreeCacheMaxNodes";
+	static final String RESOURCE_TREE_CACHE_EXPIRE_AFTER_ACCESS_INIT_PARAM = "resourceTreeCacheExpireAfterAccessSeconds";
+	static final String RESOURCE_TREE_SNAPSHOT_PATH_INIT_PARAM = "resourceTreeSnapshotPath";
+	static final String STREAMING_FLUSH_THRESHOLD_INIT_PARAM = "streamingFlushThreshold";
+	static final String METRICS_INIT_PARAM = "metrics";
+	static final String METRICS_UNFILTERED_SIZE_SAMPLING_INIT_PARAM = "metricsUnfilteredSizeSampling";
 
 	private LoadingCache<ApiKey, ResourceTreeRepository> resourceTreeRepositoryCache;
+	private Cache<ReturnTypeFieldsKey, Boolean> validationCache;
+	private Cache<ReturnTypeFieldsKey, List<ImmutableList<String>>> projectionCache;
+	private Cache<FilteringWriterKey, ObjectWriter> filteringWriterCache;
+	private volatile boolean warmedUp = true;
+	private volatile boolean warmUpFailed;
+	private FieldsExpressionCache fieldsExpressionCache;
+	private int cachedExpressionMaxLength;
 	private boolean acceptJsonPointer;
 	private boolean checkFieldsExpression;
+	private boolean skipExcludedProperties;
+	private int streamingFlushThreshold;
+	private PartialResponseMetrics metrics = PartialResponseMetrics.NO_OP;
+	private long unfilteredSizeSampling;
+	private final AtomicLong filteredResponseCount = new AtomicLong();
 	
 	@Override
 	public void init(ServletConfig config) throws ServletException {
@@ -103,17 +192,155 @@ public class PartialResponseEndpointsServlet extends EndpointsServlet {
 				ACCEPT_JSON_POINTER_INIT_PARAM, false);
 		this.checkFieldsExpression = getBooleanInitParam(config, 
 				CHECK_FIELDS_EXPRESSION_INIT_PARAM, false);
+		this.skipExcludedProperties = getBooleanInitParam(config,
+				SKIP_EXCLUDED_PROPERTIES_INIT_PARAM, true);
+		long cacheMaxEntries = getLongInitParam(config, FIELDS_EXPRESSION_CACHE_MAX_ENTRIES_INIT_PARAM, 1000);
+		Duration cacheExpireAfterAccess = Duration.ofSeconds(
+				getLongInitParam(config, FIELDS_EXPRESSION_CACHE_EXPIRE_AFTER_ACCESS_INIT_PARAM, 3600));
+		this.cachedExpressionMaxLength = (int) getLongInitParam(config, FIELDS_EXPRESSION_CACHE_MAX_LENGTH_INIT_PARAM, 2048);
+		this.fieldsExpressionCache = new FieldsExpressionCache(
+				cacheMaxEntries,
+				cachedExpressionMaxLength,
+				cacheExpireAfterAccess,
+				Optional.ofNullable(config.getInitParameter(FIELDS_EXPRESSION_PARSER_INIT_PARAM))
+						.map(name -> ParserType.valueOf(name.toUpperCase(Locale.ROOT)))
+						.orElse(ParserType.RECURSIVE_DESCENT));
+		//also used to compute projections, so always available
+		CacheBuilder<ApiKey, ResourceTreeRepository> resourceTreeCacheBuilder = newResourceTreeCacheBuilder(
+				getLongInitParam(config, RESOURCE_TREE_CACHE_MAX_NODES_INIT_PARAM, 1_000_000));
+		long resourceTreeExpireAfterAccessSeconds = getLongInitParam(config, RESOURCE_TREE_CACHE_EXPIRE_AFTER_ACCESS_INIT_PARAM, 0);
+		if (resourceTreeExpireAfterAccessSeconds > 0) {
+			resourceTreeCacheBuilder.expireAfterAccess(resourceTreeExpireAfterAccessSeconds, TimeUnit.SECONDS);
+		}
+		String snapshotPath = Optional.ofNullable(config.getInitParameter(RESOURCE_TREE_SNAPSHOT_PATH_INIT_PARAM))
+				.orElse("META-INF/partial-response/");
+		resourceTreeRepositoryCache = resourceTreeCacheBuilder.build(new CacheLoader<ApiKey, ResourceTreeRepository>() {
+			private final Supplier<DiscoveryProvider> discoveryProvider = Suppliers.memoize(
+					PartialResponseEndpointsServlet.this::createDiscoveryProvider);
+			
+			@Override
+			public ResourceTreeRepository load(ApiKey apiKey) throws Exception {
+				//snapshots compiled at build time avoid generating the Discovery document
+				try (InputStream snapshot = getClass().getClassLoader().getResourceAsStream(snapshotPath
+						+ ResourceTreeSnapshotCompiler.getSnapshotName(apiKey.getName(), apiKey.getVersion()))) {
+					if (snapshot != null) {
+						return ResourceTreeRepository.readSnapshot(snapshot);
+					}
+				}
+				RestDescription restDocument = discoveryProvider.get().getRestDocument(
+						"dummy", apiKey.getName(), apiKey.getVersion());
+				return ResourceTreeRepository.createEager(restDocument, ForkJoinPool.commonPool());
+			}
+		});
+		projectionCache = CacheBuilder.newBuilder()
+				.maximumSize(cacheMaxEntries)
+				.expireAfterAccess(cacheExpireAfterAccess.toNanos(), TimeUnit.NANOSECONDS)
+				.build();
+		filteringWriterCache = CacheBuilder.newBuilder()
+				.maximumSize(cacheMaxEntries)
+				.expireAfterAccess(cacheExpireAfterAccess.toNanos(), TimeUnit.NANOSECONDS)
+				.recordStats()
+				.build();
+		this.streamingFlushThreshold = (int) getLongInitParam(config, STREAMING_FLUSH_THRESHOLD_INIT_PARAM, 0);
+		this.metrics = createMetrics(config.getInitParameter(METRICS_INIT_PARAM));
+		this.unfilteredSizeSampling = getLongInitParam(config, METRICS_UNFILTERED_SIZE_SAMPLING_INIT_PARAM, 0);
+		getServletContext().setAttribute(METRICS_ATTR_NAME, metrics);
+		metrics.registerCache("fieldsExpression", this::getFieldsExpressionCacheStats);
+		metrics.registerCache("filteringWriter", this::getFilteringWriterCacheStats);
+		metrics.registerCache("resourceTree", this::getResourceTreeCacheStats);
 		if (checkFieldsExpression) {
-			resourceTreeRepositoryCache = CacheBuilder.newBuilder().build(new CacheLoader<ApiKey, ResourceTreeRepository>() {
-				private DiscoveryProvider discoveryProvider = createDiscoveryProvider();
-				
-				@Override
-				public ResourceTreeRepository load(ApiKey apiKey) throws Exception {
-					RestDescription restDocument = discoveryProvider.getRestDocument(
-							"dummy", apiKey.getName(), apiKey.getVersion());
-					return new ResourceTreeRepository(restDocument);
+			validationCache = CacheBuilder.newBuilder()
+					.maximumSize(cacheMaxEntries)
+					.expireAfterAccess(cacheExpireAfterAccess.toNanos(), TimeUnit.NANOSECONDS)
+					.recordStats()
+					.build();
+			metrics.registerCache("validation", this::getValidationCacheStats);
+			if (getBooleanInitParam(config, WARM_UP_RESOURCE_TREES_INIT_PARAM, false)) {
+				warmedUp = false;
+				if (getBooleanInitParam(config, WARM_UP_IN_BACKGROUND_INIT_PARAM, false)) {
+					Thread warmUpThread = new Thread(this::warmUpInBackground, "partial-response-warm-up");
+					warmUpThread.setDaemon(true);
+					warmUpThread.start();
+				} else {
+					try {
+						warmUp();
+					} catch (RuntimeException e) {
+						throw new ServletException("Resource trees warm-up failed", e);
+					}
 				}
-			});
+			}
+		}
+	}
+	
+	/**
+	 * Loads the resource tree repositories of all APIs, and resolves the resource trees of all method return types.
+	 * Methods returning void, or a type without schema, are skipped. Any other error stops the warm-up.
+	 */
+	private void warmUp() {
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		int treeCount = 0;
+		for (SystemService.EndpointNode endpoint : getSystemService().getEndpoints()) {
+			ApiConfig apiConfig = endpoint.getConfig();
+			ApiSerializationConfig serializationConfig = apiConfig.getSerializationConfig();
+			for (EndpointMethod method : apiConfig.getApiClassConfig().getMethods().keySet()) {
+				Class<?> returnType = method.getReturnType().getRawType();
+				if (returnType != void.class && returnType != Void.class && resourceTreeRepositoryCache
+						.getUnchecked(apiConfig.getApiKey())
+						.hasResourceTree(Types.getSimpleName(method.getReturnType(), serializationConfig))) {
+					getReturnTypeTree(method, apiConfig.getApiKey(), serializationConfig);
+					treeCount++;
+				}
+			}
+		}
+		log("Warmed up " + treeCount + " resource trees in " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+		warmedUp = true;
+	}
+	
+	private void warmUpInBackground() {
+		try {
+			warmUp();
+		} catch (RuntimeException e) {
+			warmUpFailed = true;
+			log("Resource trees warm-up failed", e);
+		}
+	}
+	
+	/**
+	 * Always read from the repository cache, so that the trees are released with their evicted repository.
+	 */
+	private FieldsExpressionTree getReturnTypeTree(EndpointMethod method, ApiKey apiKey, ApiSerializationConfig serializationConfig) {
+		return resourceTreeRepositoryCache
+				.getUnchecked(apiKey)
+				.getResourceTree(Types.getSimpleName(method.getReturnType(), serializationConfig));
+	}
+	
+	/**
+	 * A single segment, so that the maximum weight bounds each repository: with several segments, it would be split
+	 * between them, and a repository heavier than a segment share would be evicted as soon as it is loaded.
+	 *
+	 * @param maxNodes the maximum number of tree nodes of the cached repositories
+	 * @param <K> the key type
+	 * @return a builder of repository caches weighted by their node count
+	 */
+	static <K> CacheBuilder<K, ResourceTreeRepository> newResourceTreeCacheBuilder(long maxNodes) {
+		return CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(maxNodes)
+				.weigher((K key, ResourceTreeRepository repository) -> repository.getNodeCount())
+				.recordStats();
+	}
+	
+	private static PartialResponseMetrics createMetrics(String metricsParameter) throws ServletException {
+		if (Strings.isNullOrEmpty(metricsParameter)) {
+			return PartialResponseMetrics.NO_OP;
+		}
+		if ("inMemory".equals(metricsParameter)) {
+			return new InMemoryPartialResponseMetrics();
+		}
+		try {
+			return Class.forName(metricsParameter).asSubclass(PartialResponseMetrics.class).getConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new ServletException("Cannot create metrics '" + metricsParameter + "'", e);
 		}
 	}
 	
@@ -121,6 +348,10 @@ public class PartialResponseEndpointsServlet extends EndpointsServlet {
 		return Optional.ofNullable(config.getInitParameter(name)).map(Boolean::parseBoolean).orElse(defaultValue);
 	}
 	
+	private long getLongInitParam(ServletConfig config, String name, long defaultValue) {
+		return Optional.ofNullable(config.getInitParameter(name)).map(Long::parseLong).orElse(defaultValue);
+	}
+	
 	private DiscoveryProvider createDiscoveryProvider() {
 		ImmutableList<ApiConfig> apiConfigs = getSystemService().getEndpoints().stream().map(SystemService.EndpointNode::getConfig).collect(ImmutableList.toImmutableList());
 		try {
@@ -146,45 +377,277 @@ public class PartialResponseEndpointsServlet extends EndpointsServlet {
 				}
 				Function<JsonFactory, JsonFactory> jsonFactoryConfigurator 
 						= getConfigurator(fieldsParameterValue, serializationConfig, request);
-				
-				return new RestResponseResultWriter(context.getResponse(), serializationConfig, 
-						StandardParameters.shouldPrettyPrint(context), getInitParameters().isAddContentLength(),
+				boolean prettyPrint = StandardParameters.shouldPrettyPrint(context);
+				HttpServletResponse response = metrics == PartialResponseMetrics.NO_OP
+						? context.getResponse() : new CountingResponse(context.getResponse());
+				return new RestResponseResultWriter(response, serializationConfig, 
+						prettyPrint, getInitParameters().isAddContentLength(),
 						getInitParameters().isExceptionCompatibilityEnabled()) {
+					//set by configureWriter, called from the super constructor
+					private ObjectWriter unfilteredWriter;
+					private ObjectWriter filteringWriter;
+					private boolean writingError;
+					
 					@Override
 					protected ObjectWriter configureWriter(ObjectWriter objectWriter) {
-						return objectWriter.with(jsonFactoryConfigurator.apply(objectWriter.getFactory()));
+						unfilteredWriter = objectWriter;
+						filteringWriter = getFilteringWriter(objectWriter, prettyPrint, fieldsParameterValue, jsonFactoryConfigurator);
+						return filteringWriter;
+					}
+					
+					@Override
+					public void writeError(ServiceException e) throws IOException {
+						writingError = true; //error bodies are not recorded as filtered responses
+						super.writeError(e);
+					}
+					
+					@Override
+					protected void write(int status, Map<String, String> headers, Object value) throws IOException {
+						if (metrics == PartialResponseMetrics.NO_OP || writingError) {
+							writeResponse(response, filteringWriter, status, headers, value);
+							return;
+						}
+						FilteringCounters counters = FilteringCounters.start();
+						long start = System.nanoTime();
+						try {
+							writeResponse(response, filteringWriter, status, headers, value);
+						} finally {
+							counters.stop();
+						}
+						long nanos = System.nanoTime() - start;
+						metrics.responseFiltered(methodConfig.getName(), new FilteredResponseStats(nanos,
+								((CountingResponse) response).getCount(), getUnfilteredSize(unfilteredWriter, value),
+								counters.getTokensWritten(), counters.getTokensExcluded()));
 					}
 				};
 			}
 			
+			/**
+			 * Same as ServletResponseResultWriter, except that the response is serialized only once when the content
+			 * length is added, and that the output can be flushed periodically.
+			 */
+			private void writeResponse(HttpServletResponse response, ObjectWriter writer, int status,
+					Map<String, String> headers, Object value) throws IOException {
+				response.setStatus(status);
+				if (headers != null) {
+					headers.forEach(response::addHeader);
+				}
+				if (value == null) {
+					return;
+				}
+				response.setContentType("application/json; charset=UTF-8");
+				if (getInitParameters().isAddContentLength()) {
+					//the filtered response is buffered, instead of being serialized twice
+					byte[] body = writer.writeValueAsBytes(value);
+					response.setContentLength(body.length);
+					response.getOutputStream().write(body);
+				} else if (streamingFlushThreshold > 0) {
+					writer.writeValue(new PeriodicFlushOutputStream(response.getOutputStream(), streamingFlushThreshold), value);
+				} else {
+					writer.writeValue(response.getOutputStream(), value);
+				}
+			}
+			
+			private long getUnfilteredSize(ObjectWriter unfilteredWriter, Object value) throws IOException {
+				if (unfilteredSizeSampling <= 0 || filteredResponseCount.getAndIncrement() % unfilteredSizeSampling != 0) {
+					return -1;
+				}
+				CountingOutputStream output = new CountingOutputStream(ByteStreams.nullOutputStream());
+				unfilteredWriter.writeValue(output, value);
+				return output.getCount();
+			}
+			
 			private Function<JsonFactory, JsonFactory> getConfigurator(
 					String fieldsParameterValue, ApiSerializationConfig serializationConfig,
 					HttpServletRequest request) throws BadRequestException {
 				if (fieldsParameterValue.startsWith("/")) {
-					if (acceptJsonPointer) {
+					if (acceptJsonPointer && JsonPointerJsonFactory.isValidPointer(fieldsParameterValue)) {
 						return input -> new JsonPointerJsonFactory(input, fieldsParameterValue);
 					} else {
+						metrics.expressionRejected(methodConfig.getName(), fieldsParameterValue);
 						throw new BadRequestException("Invalid fields parameter '" + fieldsParameterValue + "'", "invalidParameter", "global");
 					}
 				} else {
-					FieldsExpression fieldsExpression = FieldsExpression.parse(fieldsParameterValue);
+					long start = System.nanoTime();
+					FieldsExpression fieldsExpression;
+					try {
+						fieldsExpression = fieldsExpressionCache.parse(fieldsParameterValue);
+					} catch (FieldExpressionParsingException e) {
+						metrics.expressionRejected(methodConfig.getName(), fieldsParameterValue);
+						throw e;
+					}
+					metrics.expressionParsed(methodConfig.getName(), System.nanoTime() - start);
 					if (checkFieldsExpression) {
-						FieldsExpressionTree resourceTree = resourceTreeRepositoryCache
-								.getUnchecked(methodConfig.getApiConfig().getApiKey())
-								.getResourceTree(Types.getSimpleName(method.getReturnType(), serializationConfig));
-						if (!fieldsExpression.isValidAgainst(resourceTree)) {
+						start = System.nanoTime();
+						boolean valid = isValidAgainstReturnType(fieldsExpression, fieldsParameterValue,
+								method, methodConfig.getApiConfig().getApiKey(), serializationConfig);
+						metrics.expressionValidated(methodConfig.getName(), System.nanoTime() - start);
+						if (!valid) {
+							metrics.expressionRejected(methodConfig.getName(), fieldsParameterValue);
 							//can't match exactly response from Google APIs, as we can't set location and locationType
 							throw new BadRequestException("Invalid field selection '" + fieldsParameterValue + "'", "invalidParameter", "global");
 						}
 					}
 					RequestedFieldsImpl requestedFields = new RequestedFieldsImpl(fieldsExpression);
 					request.setAttribute(REQUESTED_FIELDS_ATTR_NAME, requestedFields);
+					//only computed if the API implementation asks for it
+					request.setAttribute(REQUESTED_PROJECTION_ATTR_NAME, Suppliers.memoize(() -> getProjection(fieldsExpression,
+							fieldsParameterValue, method, methodConfig.getApiConfig().getApiKey(), serializationConfig)));
 					return input -> new PartialResponseJsonFactory(input, fieldsExpression.getFilterTree());
 				}
 			}
 		};
 	}
 	
+	/**
+	 * Returns a writer filtering the output. Writers are immutable, so the same writer is reused for all requests
+	 * with the same serialization settings and fields parameter: steady-state requests create no JsonFactory copy
+	 * or ObjectWriter, and Jackson buffer recycling is not defeated.
+	 */
+	private ObjectWriter getFilteringWriter(ObjectWriter objectWriter, boolean prettyPrint, String fieldsParameterValue,
+			Function<JsonFactory, JsonFactory> jsonFactoryConfigurator) {
+		if (fieldsParameterValue.length() > cachedExpressionMaxLength) {
+			return createFilteringWriter(objectWriter, jsonFactoryConfigurator);
+		}
+		//the pretty printer is created by the result writer for each request, but is equivalent for all requests
+		FilteringWriterKey key = new FilteringWriterKey(objectWriter.getConfig(), objectWriter.getFactory(),
+				prettyPrint, fieldsParameterValue);
+		ObjectWriter filteringWriter = filteringWriterCache.getIfPresent(key);
+		if (filteringWriter == null) {
+			filteringWriter = createFilteringWriter(objectWriter, jsonFactoryConfigurator);
+			filteringWriterCache.put(key, filteringWriter);
+		}
+		return filteringWriter;
+	}
+	
+	private ObjectWriter createFilteringWriter(ObjectWriter objectWriter, Function<JsonFactory, JsonFactory> jsonFactoryConfigurator) {
+		ObjectWriter filteringWriter = objectWriter.with(jsonFactoryConfigurator.apply(objectWriter.getFactory()));
+		return skipExcludedProperties
+				? PartialResponseSerializerModifier.skipExcludedProperties(filteringWriter) : filteringWriter;
+	}
+	
+	/**
+	 * Checks the fields expression against the schema of the method return type.
+	 * The result only depends on the API, the return type and the fields expression, so it is cached.
+	 */
+	private boolean isValidAgainstReturnType(FieldsExpression fieldsExpression, String fieldsParameterValue,
+			EndpointMethod method, ApiKey apiKey, ApiSerializationConfig serializationConfig) {
+		if (fieldsParameterValue.length() > cachedExpressionMaxLength) {
+			return fieldsExpression.isValidAgainst(getReturnTypeTree(method, apiKey, serializationConfig));
+		}
+		ReturnTypeFieldsKey key = new ReturnTypeFieldsKey(apiKey,
+				Types.getSimpleName(method.getReturnType(), serializationConfig), fieldsParameterValue);
+		Boolean valid = validationCache.getIfPresent(key);
+		if (valid == null) {
+			valid = fieldsExpression.isValidAgainst(getReturnTypeTree(method, apiKey, serializationConfig));
+			validationCache.put(key, valid);
+		}
+		return valid;
+	}
+	
+	/**
+	 * Computes the projection of the fields expression onto the schema of the method return type, cached like
+	 * the validation results.
+	 *
+	 * @return the projection, or null if the return type has no schema
+	 */
+	private List<ImmutableList<String>> getProjection(FieldsExpression fieldsExpression, String fieldsParameterValue,
+			EndpointMethod method, ApiKey apiKey, ApiSerializationConfig serializationConfig) {
+		String schemaName = Types.getSimpleName(method.getReturnType(), serializationConfig);
+		ResourceTreeRepository repository = resourceTreeRepositoryCache.getUnchecked(apiKey);
+		if (!repository.hasResourceTree(schemaName)) {
+			return null;
+		}
+		FieldsExpressionTree schema = repository.getResourceTree(schemaName);
+		if (fieldsParameterValue.length() > cachedExpressionMaxLength) {
+			return fieldsExpression.projectOnto(schema);
+		}
+		ReturnTypeFieldsKey key = new ReturnTypeFieldsKey(apiKey, schemaName, fieldsParameterValue);
+		List<ImmutableList<String>> projection = projectionCache.getIfPresent(key);
+		if (projection == null) {
+			projection = fieldsExpression.projectOnto(schema);
+			projectionCache.put(key, projection);
+		}
+		return projection;
+	}
+	
+	/**
+	 * @return hit, miss and eviction statistics of the parsed fields expression cache
+	 */
+	public CacheStats getFieldsExpressionCacheStats() {
+		return fieldsExpressionCache.stats();
+	}
+	
+	/**
+	 * @return hit, miss and eviction statistics of the fields expression validation cache
+	 * (empty if "checkFieldsExpression" is not enabled)
+	 */
+	public CacheStats getValidationCacheStats() {
+		return validationCache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : validationCache.stats();
+	}
+	
+	/**
+	 * @return hit, miss and eviction statistics of the cache of filtering ObjectWriters
+	 */
+	public CacheStats getFilteringWriterCacheStats() {
+		return filteringWriterCache.stats();
+	}
+	
+	/**
+	 * @return hit, miss and eviction statistics of the cache of resource tree repositories, one per API version
+	 */
+	public CacheStats getResourceTreeCacheStats() {
+		return resourceTreeRepositoryCache.stats();
+	}
+	
+	/**
+	 * @return how many resource tree nodes are shared between schemas and API versions. The statistics are process-wide,
+	 * they include the resource trees of all the servlets of this JVM, not only those of this servlet
+	 */
+	public SubtreeSharingStats getResourceTreeSharingStats() {
+		return SubtreeSharingStats.current();
+	}
+	
+	/**
+	 * @return the metrics recorded by this servlet (no-op if the "metrics" init parameter is not set)
+	 */
+	public PartialResponseMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Can be used as a readiness check when "warmUpInBackground" is enabled.
+	 *
+	 * @return true if the resource trees warm-up is complete, or was not requested
+	 */
+	public boolean isWarmedUp() {
+		return warmedUp;
+	}
+	
+	/**
+	 * @return true if the background warm-up stopped on an error, {@link #isWarmedUp} then staying false
+	 */
+	public boolean isWarmUpFailed() {
+		return warmUpFailed;
+	}
+	
+	/**
+	 * If the response will be filtered by a fields expression, returns the field paths of the method return type
+	 * selected by the expression, wildcards being expanded against the return type schema. This can be used by
+	 * an API implementation to load only these fields from its storage.
+	 *
+	 * @param request a HttpServletRequest
+	 * @return the selected field paths, no path being a prefix of another one
+	 * (null if no filtering is performed, or if the return type has no schema)
+	 * @see FieldsExpression#projectOnto
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<ImmutableList<String>> getRequestedProjection(HttpServletRequest request) {
+		Supplier<List<ImmutableList<String>>> projection
+				= (Supplier<List<ImmutableList<String>>>) request.getAttribute(REQUESTED_PROJECTION_ATTR_NAME);
+		return projection == null ? null : projection.get();
+	}
+	
 	/**
 	 * If the response will be filtered by a fields expression, returns an instance of
 	 * {@link RequestedFields} that can be used to perform checks on fields to be returned.
@@ -196,4 +659,119 @@ public class PartialResponseEndpointsServlet extends EndpointsServlet {
 		return (RequestedFields) request.getAttribute(REQUESTED_FIELDS_ATTR_NAME);
 	}
 	
+	/**
+	 * Counts the bytes written to the output stream of the response.
+	 */
+	private static final class CountingResponse extends HttpServletResponseWrapper {
+		
+		private long count;
+		
+		CountingResponse(HttpServletResponse response) {
+			super(response);
+		}
+		
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			ServletOutputStream output = super.getOutputStream();
+			return new ServletOutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					output.write(b);
+					count++;
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					output.write(b, off, len);
+					count += len;
+				}
+				
+				@Override
+				public void flush() throws IOException {
+					output.flush();
+				}
+				
+				@Override
+				public void close() throws IOException {
+					output.close();
+				}
+			};
+		}
+		
+		long getCount() {
+			return count;
+		}
+		
+	}
+	
+	private static final class ReturnTypeFieldsKey {
+		
+		private final ApiKey apiKey;
+		private final String returnTypeName;
+		private final String fieldsExpression;
+		
+		ReturnTypeFieldsKey(ApiKey apiKey, String returnTypeName, String fieldsExpression) {
+			this.apiKey = apiKey;
+			this.returnTypeName = returnTypeName;
+			this.fieldsExpression = fieldsExpression;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (o == null || getClass() != o.getClass())
+				return false;
+			ReturnTypeFieldsKey that = (ReturnTypeFieldsKey) o;
+			return apiKey.equals(that.apiKey)
+					&& returnTypeName.equals(that.returnTypeName)
+					&& fieldsExpression.equals(that.fieldsExpression);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(apiKey, returnTypeName, fieldsExpression);
+		}
+		
+	}
+	
+	/**
+	 * Serialization config and factory come from ObjectMappers cached by Endpoints, and are compared by identity.
+	 */
+	private static final class FilteringWriterKey {
+		
+		private final SerializationConfig serializationConfig;
+		private final JsonFactory jsonFactory;
+		private final boolean prettyPrint;
+		private final String fieldsExpression;
+		
+		FilteringWriterKey(SerializationConfig serializationConfig, JsonFactory jsonFactory, boolean prettyPrint,
+				String fieldsExpression) {
+			this.serializationConfig = serializationConfig;
+			this.jsonFactory = jsonFactory;
+			this.prettyPrint = prettyPrint;
+			this.fieldsExpression = fieldsExpression;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (o == null || getClass() != o.getClass())
+				return false;
+			FilteringWriterKey that = (FilteringWriterKey) o;
+			return serializationConfig == that.serializationConfig
+					&& jsonFactory == that.jsonFactory
+					&& prettyPrint == that.prettyPrint
+					&& fieldsExpression.equals(that.fieldsExpression);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(System.identityHashCode(serializationConfig), System.identityHashCode(jsonFactory),
+					prettyPrint, fieldsExpression);
+		}
+		
+	}
+	
 }
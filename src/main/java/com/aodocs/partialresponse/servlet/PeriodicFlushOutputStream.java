@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.servlet;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Flushes the underlying stream each time a given number of bytes has been written since the last flush.
+ * Jackson generators only write their buffer when it is full, so large responses reach the stream in
+ * buffer-sized blocks, and are flushed in chunks of about the threshold size.
+ */
+class PeriodicFlushOutputStream extends FilterOutputStream {
+	
+	private final int flushThreshold;
+	private int unflushedBytes;
+	
+	PeriodicFlushOutputStream(OutputStream out, int flushThreshold) {
+		super(out);
+		this.flushThreshold = flushThreshold;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		written(1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		written(len);
+	}
+	
+	private void written(int len) throws IOException {
+		unflushedBytes += len;
+		if (unflushedBytes >= flushThreshold) {
+			flush();
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		unflushedBytes = 0;
+		out.flush();
+	}
+	
+}
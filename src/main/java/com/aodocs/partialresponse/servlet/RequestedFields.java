@@ -19,6 +19,12 @@
  */
 package com.aodocs.partialresponse.servlet;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Given a field "path", this instance will check if the corresponding field is requested to be 
  * included in the partial response.
@@ -37,6 +43,55 @@ public interface RequestedFields {
    */
   boolean isRequested(String fieldPath);
 
+  /**
+   * Same as {@link #isRequested(String)}, with a path already split in field names.
+   * 
+   * @param fieldPath the field names of the path, none of them can contain "/" or wildcards
+   * @return if the field is requested in the partial response
+   */
+  default boolean isRequested(List<String> fieldPath) {
+    return isRequested(String.join("/", fieldPath));
+  }
+
+  /**
+   * Checks several field paths in one call.
+   * 
+   * @param fieldPaths the paths of the fields to check
+   * @return a bit set where the bit at index i is set if the i-th path (in iteration order) is requested
+   */
+  default BitSet requestedAmong(Collection<String> fieldPaths) {
+    BitSet requested = new BitSet(fieldPaths.size());
+    int index = 0;
+    for (String fieldPath : fieldPaths) {
+      requested.set(index++, isRequested(fieldPath));
+    }
+    return requested;
+  }
+
+  /**
+   * Lists the names of the direct children explicitly requested at the current root.
+   * Children requested through a wildcard, or because the current root itself is requested
+   * as a whole, are not listed: check {@link #allChildrenRequested()} first.
+   * 
+   * The default implementation cannot enumerate children, and returns an empty set
+   * ({@link #allChildrenRequested()} returning true).
+   * 
+   * @return the names of the explicitly requested children
+   */
+  default Set<String> childrenRequested() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * The default implementation returns true, as it cannot tell which children are requested.
+   * 
+   * @return true if any direct child of the current root is requested
+   * (the current root is requested as a whole, or a wildcard is used)
+   */
+  default boolean allChildrenRequested() {
+    return true;
+  }
+
   /**
    * Returns a new instance with a new root to check requested fields against.
    * This is useful to perform similar checks on list / get API methods of the same resource.
@@ -20,54 +20,100 @@
 package com.aodocs.partialresponse.servlet;
 
 import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
-import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 
+/**
+ * Matches field paths against a {@link RequestedFieldsTrie}, without parsing them.
+ * Instances created by {@link #startingFrom} are cursors positioned on the trie nodes reached by the new root path.
+ */
 class RequestedFieldsImpl implements RequestedFields {
 
-  private final static CharMatcher SLASH_MATCHER = CharMatcher.is('/');
-  
-  private final FieldsExpression fieldsExpression;
+  private static final RequestedFieldsTrie.Node[] NO_NODES = {};
+
+  //nodes matching the current root, a leaf means that everything below is requested
+  private final RequestedFieldsTrie.Node[] rootNodes;
 
   public RequestedFieldsImpl(FieldsExpression fieldsExpression) {
     Preconditions.checkArgument(!fieldsExpression.getFilterTree().getRoot().isWildcard(),
         "PartialResponseFieldsChecker must not be used on wildcard expressions");
-    this.fieldsExpression = fieldsExpression;
+    RequestedFieldsTrie.Node root = RequestedFieldsTrie.compile(fieldsExpression.getFilterTree());
+    //an empty expression requests nothing
+    this.rootNodes = root.isLeaf() ? NO_NODES : new RequestedFieldsTrie.Node[] { root };
+  }
+
+  private RequestedFieldsImpl(RequestedFieldsTrie.Node[] rootNodes) {
+    this.rootNodes = rootNodes;
   }
 
   @Override
   public boolean isRequested(String fieldPath) {
     checkFieldPath(fieldPath);
-    FieldsExpression testedExpression = FieldsExpression.parse(fieldPath);
-    return fieldsExpression.overlapsWith(testedExpression.getFilterTree());
+    for (RequestedFieldsTrie.Node rootNode : rootNodes) {
+      if (rootNode.matches(fieldPath, 0)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
-  public RequestedFields startingFrom(String newRootPath) {
-    checkFieldPath(newRootPath);
-    return new RequestedFields() {
-      @Override
-      public boolean isRequested(String fieldPath) {
-        return RequestedFieldsImpl.this.isRequested(
-            newRootPath + "/" + fieldPath);
+  public boolean isRequested(List<String> fieldPath) {
+    Preconditions.checkArgument(fieldPath != null && !fieldPath.isEmpty(), "fieldPath must not be empty");
+    for (String fieldName : fieldPath) {
+      Preconditions.checkArgument(!StringUtils.isBlank(fieldName) 
+              && fieldName.indexOf('/') < 0 && fieldName.indexOf('*') < 0,
+          "field names must be non-blank strings, without '/' or wildcards");
+    }
+    for (RequestedFieldsTrie.Node rootNode : rootNodes) {
+      if (rootNode.matches(fieldPath, 0)) {
+        return true;
       }
+    }
+    return false;
+  }
 
-      @Override
-      public RequestedFields startingFrom(String newRootPath2) {
-        return RequestedFieldsImpl.this.startingFrom(
-            newRootPath + "/" + newRootPath2);
+  @Override
+  public Set<String> childrenRequested() {
+    Set<String> childNames = new LinkedHashSet<>();
+    for (RequestedFieldsTrie.Node rootNode : rootNodes) {
+      Collections.addAll(childNames, rootNode.getChildNames());
+    }
+    return Collections.unmodifiableSet(childNames);
+  }
+
+  @Override
+  public boolean allChildrenRequested() {
+    for (RequestedFieldsTrie.Node rootNode : rootNodes) {
+      if (rootNode.isLeaf() || rootNode.getWildcardChild() != null) {
+        return true;
       }
-    };
+    }
+    return false;
+  }
+
+  @Override
+  public RequestedFields startingFrom(String newRootPath) {
+    checkFieldPath(newRootPath);
+    Set<RequestedFieldsTrie.Node> reachedNodes = new LinkedHashSet<>(); //nodes use identity equality
+    for (RequestedFieldsTrie.Node rootNode : rootNodes) {
+      rootNode.collectReachedNodes(newRootPath, 0, reachedNodes);
+    }
+    return new RequestedFieldsImpl(reachedNodes.toArray(NO_NODES));
   }
 
   private void checkFieldPath(String fieldPath) {
     Preconditions.checkArgument(!StringUtils.isBlank(fieldPath), 
         "fieldPath must be a non-blank string");
-    Preconditions.checkArgument(!fieldPath.contains("*"),
+    Preconditions.checkArgument(fieldPath.indexOf('*') < 0,
         "fieldPath must not contain wildcards");
-    String normalized = SLASH_MATCHER.trimAndCollapseFrom(fieldPath, '/');
-    Preconditions.checkArgument(normalized.equals(fieldPath),
+    Preconditions.checkArgument(fieldPath.charAt(0) != '/' 
+            && fieldPath.charAt(fieldPath.length() - 1) != '/'
+            && !fieldPath.contains("//"),
         "fieldPath not start with, end with or have repeated '/' chars");
   }
   
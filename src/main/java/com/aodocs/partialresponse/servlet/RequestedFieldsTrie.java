@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.servlet;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix trie compiled from a fields expression tree, used to match slash-separated
+ * field paths without parsing them. Children are looked up by binary search on regions of the
+ * path, so matching does not allocate.
+ */
+final class RequestedFieldsTrie {
+
+  private static final String WILDCARD = "*";
+  private static final Node[] NO_CHILDREN = {};
+  private static final String[] NO_NAMES = {};
+
+  //filter trees are immutable, weak keys to compare them by identity and not retain them
+  private static final LoadingCache<FieldsExpressionTree, Node> COMPILED_TRIES = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(CacheLoader.from(tree -> compile(tree.getRoot())));
+
+  private RequestedFieldsTrie() {
+  }
+
+  /**
+   * @param tree a fields expression filter tree
+   * @return the root of the compiled trie, compiled once for each tree instance
+   */
+  static Node compile(FieldsExpressionTree tree) {
+    return COMPILED_TRIES.getUnchecked(tree);
+  }
+
+  private static Node compile(FieldsExpressionNode node) {
+    Map<String, FieldsExpressionNode> sortedChildren = new TreeMap<>(node.getChildMap());
+    FieldsExpressionNode wildcardChild = sortedChildren.remove(WILDCARD);
+    if (sortedChildren.isEmpty() && wildcardChild == null) {
+      return new Node(NO_NAMES, NO_CHILDREN, null);
+    }
+    String[] names = new String[sortedChildren.size()];
+    Node[] children = new Node[sortedChildren.size()];
+    int index = 0;
+    for (Map.Entry<String, FieldsExpressionNode> child : sortedChildren.entrySet()) {
+      names[index] = child.getKey();
+      children[index] = compile(child.getValue());
+      index++;
+    }
+    return new Node(names, children, wildcardChild == null ? null : compile(wildcardChild));
+  }
+
+  static final class Node {
+
+    private final String[] names; //sorted
+    private final Node[] children;
+    private final Node wildcardChild;
+
+    private Node(String[] names, Node[] children, Node wildcardChild) {
+      this.names = names;
+      this.children = children;
+      this.wildcardChild = wildcardChild;
+    }
+
+    /**
+     * @return true if the expression path ends here: everything below is requested
+     */
+    boolean isLeaf() {
+      return children.length == 0 && wildcardChild == null;
+    }
+
+    /**
+     * @return the child named like path[start, end), or null
+     */
+    Node getChild(String path, int start, int end) {
+      int low = 0;
+      int high = names.length - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int comparison = compareRegion(names[middle], path, start, end);
+        if (comparison < 0) {
+          low = middle + 1;
+        } else if (comparison > 0) {
+          high = middle - 1;
+        } else {
+          return children[middle];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return the child with the provided name, or null
+     */
+    Node getChild(String name) {
+      return getChild(name, 0, name.length());
+    }
+
+    Node getWildcardChild() {
+      return wildcardChild;
+    }
+
+    /**
+     * @return the names of the children, excluding the wildcard
+     */
+    String[] getChildNames() {
+      return names;
+    }
+
+    /**
+     * Same order as {@link String#compareTo}, without extracting the region.
+     */
+    private static int compareRegion(String name, String path, int start, int end) {
+      int regionLength = end - start;
+      int length = Math.min(name.length(), regionLength);
+      for (int i = 0; i < length; i++) {
+        int difference = name.charAt(i) - path.charAt(start + i);
+        if (difference != 0) {
+          return difference;
+        }
+      }
+      return name.length() - regionLength;
+    }
+
+    /**
+     * Checks if a path, from start, overlaps with one of the expression paths below this node:
+     * either the path is a prefix of an expression path, or an expression path is a prefix of the path.
+     *
+     * @param path a slash-separated path
+     * @param start index of the first char of the next segment, path.length() + 1 when the path is exhausted
+     * @return true if the path is requested
+     */
+    boolean matches(String path, int start) {
+      if (isLeaf() || start > path.length()) {
+        return true;
+      }
+      int end = segmentEnd(path, start);
+      Node namedChild = getChild(path, start, end);
+      if (namedChild != null && namedChild.matches(path, end + 1)) {
+        return true;
+      }
+      return wildcardChild != null && wildcardChild.matches(path, end + 1);
+    }
+
+    /**
+     * Same as {@link #matches(String, int)}, with a path already split in field names.
+     */
+    boolean matches(List<String> path, int index) {
+      if (isLeaf() || index == path.size()) {
+        return true;
+      }
+      Node namedChild = getChild(path.get(index));
+      if (namedChild != null && namedChild.matches(path, index + 1)) {
+        return true;
+      }
+      return wildcardChild != null && wildcardChild.matches(path, index + 1);
+    }
+
+    /**
+     * Collects the nodes reached by a path, from start. Leaves reached before the end of the path are collected as is.
+     *
+     * @param path a slash-separated path
+     * @param start index of the first char of the next segment, path.length() + 1 when the path is exhausted
+     * @param reachedNodes the collected nodes
+     */
+    void collectReachedNodes(String path, int start, Collection<Node> reachedNodes) {
+      if (isLeaf() || start > path.length()) {
+        reachedNodes.add(this);
+        return;
+      }
+      int end = segmentEnd(path, start);
+      Node namedChild = getChild(path, start, end);
+      if (namedChild != null) {
+        namedChild.collectReachedNodes(path, end + 1, reachedNodes);
+      }
+      if (wildcardChild != null) {
+        wildcardChild.collectReachedNodes(path, end + 1, reachedNodes);
+      }
+    }
+
+    private static int segmentEnd(String path, int start) {
+      int end = path.indexOf('/', start);
+      return end < 0 ? path.length() : end;
+    }
+
+  }
+
+}
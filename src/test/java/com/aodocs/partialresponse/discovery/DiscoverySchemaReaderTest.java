@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.google.api.services.discovery.model.JsonSchema;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.collect.ImmutableList;
+
+public class DiscoverySchemaReaderTest {
+	
+	private static RestDescription read(String json) throws IOException {
+		return DiscoverySchemaReader.read(new ByteArrayInputStream(json.replace('\'', '"').getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	@Test
+	public void testSchemasOnly() throws IOException {
+		RestDescription restDescription = read("{'kind':'discovery#restDescription','name':'test','version':'v1',"
+				+ "'resources':{'files':{'methods':{'get':{'response':{'$ref':'File'}}}}},"
+				+ "'schemas':{'File':{'id':'File','type':'object','description':'A file',"
+				+ "'additionalProperties':{'type':'string'},"
+				+ "'properties':{'name':{'type':'string','description':'The name','enum':['a','b']},"
+				+ "'parents':{'type':'array','items':{'$ref':'File'}},"
+				+ "'flag':{'type':'boolean','additionalProperties':true}}}},"
+				+ "'title':'Test API'}");
+		assertEquals("test", restDescription.getName());
+		assertEquals("v1", restDescription.getVersion());
+		assertNull(restDescription.getResources());
+		assertNull(restDescription.getTitle());
+		JsonSchema file = restDescription.getSchemas().get("File");
+		assertNull(file.getDescription());
+		assertEquals("object", file.getType());
+		assertEquals("string", file.getAdditionalProperties().getType());
+		assertEquals(ImmutableList.of("name", "parents", "flag"), ImmutableList.copyOf(file.getProperties().keySet()));
+		assertNull(file.getProperties().get("name").getEnum());
+		assertEquals("File", file.getProperties().get("parents").getItems().get$ref());
+		assertNull(file.getProperties().get("flag").getAdditionalProperties());
+	}
+	
+	@Test
+	public void testTreeOrder() throws IOException {
+		//additionalProperties are read before properties, but the wildcard is still added last
+		RestDescription restDescription = read("{'schemas':{'Map':{'type':'object',"
+				+ "'additionalProperties':{'type':'string'},'properties':{'a':{'type':'string'}}}}}");
+		assertEquals(ImmutableList.of("a", "*"), ImmutableList.copyOf(ResourceTreeRepository.createEager(restDescription)
+				.getResourceTree("Map").getRoot().getChildMap().keySet()));
+	}
+	
+	@Test(expected = JsonParseException.class)
+	public void testInvalidSchemas() throws IOException {
+		read("{'schemas':[]}");
+	}
+	
+}
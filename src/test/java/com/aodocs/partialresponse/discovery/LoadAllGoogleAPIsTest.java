@@ -19,9 +19,12 @@
  */
 package com.aodocs.partialresponse.discovery;
 
+import static org.junit.Assert.assertSame;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -30,11 +33,13 @@ import org.junit.runners.Parameterized;
 import com.google.api.client.googleapis.util.Utils;
 import com.google.api.client.json.JsonParser;
 import com.google.api.services.discovery.model.DirectoryList;
+import com.google.api.services.discovery.model.RestDescription;
 import com.google.common.io.Resources;
 
 /**
  * Checks a lot of Google APIs discovery files by loading
- * all their schema with ResourceTreeRepository.
+ * all their schema with ResourceTreeRepository, sequentially, in parallel and with the streaming reader.
+ * Trees built from the same schemas share the same compact nodes.
  */
 @RunWith(Parameterized.class)
 public class LoadAllGoogleAPIsTest {
@@ -67,4 +72,46 @@ public class LoadAllGoogleAPIsTest {
 		ResourceTreeRepository.load(resource).loadAllRootNodes();
 	}
 	
+	private RestDescription parseRestDescription() throws IOException {
+		try (InputStream inputStream = resource.openStream()) {
+			return Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class);
+		}
+	}
+	
+	@Test
+	public void testParallelBuild() throws IOException {
+		RestDescription restDescription = parseRestDescription();
+		ResourceTreeRepository parallelRepository = ResourceTreeRepository.createEager(restDescription, ForkJoinPool.commonPool());
+		if (restDescription.getSchemas() != null) {
+			TreeAssertions.assertIsomorphic(ResourceTreeRepository.createEager(restDescription), parallelRepository,
+					restDescription.getSchemas().keySet());
+		}
+	}
+	
+	@Test
+	public void testStreamingLoad() throws IOException {
+		RestDescription restDescription = parseRestDescription();
+		ResourceTreeRepository streamingRepository = ResourceTreeRepository.load(resource);
+		streamingRepository.loadAllRootNodes();
+		if (restDescription.getSchemas() != null) {
+			TreeAssertions.assertIsomorphic(ResourceTreeRepository.createEager(restDescription), streamingRepository,
+					restDescription.getSchemas().keySet());
+		}
+	}
+	
+	@Test
+	public void testLazyBuildIsShared() throws IOException {
+		RestDescription restDescription = parseRestDescription();
+		if (restDescription.getSchemas() != null) {
+			//trees compacted one build at a time share the same nodes as trees compacted at once
+			ResourceTreeRepository lazyRepository = new ResourceTreeRepository(restDescription);
+			restDescription.getSchemas().keySet().forEach(lazyRepository::getResourceTree);
+			ResourceTreeRepository eagerRepository = ResourceTreeRepository.createEager(restDescription);
+			for (String schemaName : restDescription.getSchemas().keySet()) {
+				assertSame(schemaName, eagerRepository.getResourceTree(schemaName).getRoot(),
+						lazyRepository.getResourceTree(schemaName).getRoot());
+			}
+		}
+	}
+	
 }
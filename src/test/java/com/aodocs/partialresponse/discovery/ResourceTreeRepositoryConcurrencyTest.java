@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+
+/**
+ * Checks that lazy and eager repositories can be shared by several threads.
+ */
+public class ResourceTreeRepositoryConcurrencyTest {
+	
+	private static RestDescription loadRestDescription(String api, String version) throws IOException {
+		try (InputStream inputStream = Resources.getResource("googleapis/" + api + "/" + version + "/" + api + "-api.json").openStream()) {
+			return Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class);
+		}
+	}
+	
+	@Test
+	public void testEagerRepository() throws IOException {
+		RestDescription restDescription = loadRestDescription("drive", "v3");
+		ResourceTreeRepository repository = ResourceTreeRepository.createEager(restDescription);
+		assertEquals(restDescription.getSchemas().size(), repository.loadAllRootNodes().size());
+		assertSame(repository.getResourceTree("File").getRoot(), repository.getResourceTree("File").getRoot());
+	}
+	
+	@Test
+	public void testNodeCount() throws IOException {
+		RestDescription restDescription = loadRestDescription("drive", "v3");
+		ResourceTreeRepository repository = new ResourceTreeRepository(restDescription);
+		assertEquals(0, repository.getNodeCount());
+		repository.getResourceTree("File");
+		int fileNodeCount = repository.getNodeCount();
+		assertTrue(fileNodeCount > 1);
+		repository.loadAllRootNodes();
+		assertTrue(repository.getNodeCount() > fileNodeCount);
+		assertEquals(ResourceTreeRepository.createEager(restDescription).getNodeCount(), repository.getNodeCount());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testEagerRepositoryUnknownSchema() throws IOException {
+		ResourceTreeRepository.createEager(loadRestDescription("drive", "v3")).getResourceTree("Unknown");
+	}
+	
+	@Test
+	public void testHasResourceTree() throws IOException {
+		RestDescription restDescription = loadRestDescription("drive", "v3");
+		ResourceTreeRepository lazyRepository = new ResourceTreeRepository(restDescription);
+		ResourceTreeRepository eagerRepository = ResourceTreeRepository.createEager(restDescription);
+		for (ResourceTreeRepository repository : ImmutableList.of(lazyRepository, eagerRepository)) {
+			assertTrue(repository.hasResourceTree("File"));
+			assertFalse(repository.hasResourceTree("Unknown"));
+		}
+		assertEquals(0, lazyRepository.getNodeCount()); //nothing built
+	}
+	
+	@Test
+	public void testConcurrentLazyAccess() throws Exception {
+		RestDescription restDescription = loadRestDescription("compute", "v1");
+		List<String> schemaNames = ImmutableList.copyOf(restDescription.getSchemas().keySet());
+		ResourceTreeRepository repository = new ResourceTreeRepository(restDescription);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			//each thread accesses the schemas in a different order
+			List<Callable<Map<String, FieldsExpressionNode>>> tasks = IntStream.range(0, 8)
+					.mapToObj(offset -> (Callable<Map<String, FieldsExpressionNode>>) () -> IntStream.range(0, schemaNames.size())
+							.mapToObj(i -> schemaNames.get((i + offset * 7) % schemaNames.size()))
+							.collect(Collectors.toMap(name -> name, name -> repository.getResourceTree(name).getRoot())))
+					.collect(Collectors.toList());
+			List<Future<Map<String, FieldsExpressionNode>>> results = executor.invokeAll(tasks);
+			Map<String, FieldsExpressionNode> expected = results.get(0).get();
+			for (Future<Map<String, FieldsExpressionNode>> result : results) {
+				Map<String, FieldsExpressionNode> actual = result.get();
+				for (String name : schemaNames) {
+					assertSame(expected.get(name), actual.get(name)); //each tree is built once
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+}
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+import com.google.common.io.Resources;
+
+/**
+ * Checks that identical subtrees are shared between repositories.
+ */
+public class ResourceTreeSharingTest {
+	
+	private static ResourceTreeRepository load(String api, String version) throws IOException {
+		return ResourceTreeRepository.load(Resources.getResource("googleapis/" + api + "/" + version + "/" + api + "-api.json"));
+	}
+	
+	private static Set<FieldsExpressionNode> collectNodes(Collection<FieldsExpressionNode> roots, Set<FieldsExpressionNode> nodes) {
+		Deque<FieldsExpressionNode> toVisit = new ArrayDeque<>(roots);
+		while (!toVisit.isEmpty()) {
+			FieldsExpressionNode node = toVisit.pop();
+			if (nodes.add(node)) {
+				toVisit.addAll(node.getChildren());
+			}
+		}
+		return nodes;
+	}
+	
+	@Test
+	public void testSameApiIsShared() throws IOException {
+		ResourceTreeRepository first = load("drive", "v3");
+		ResourceTreeRepository second = load("drive", "v3");
+		assertSame(first.getResourceTree("File").getRoot(), second.getResourceTree("File").getRoot());
+	}
+	
+	@Test
+	public void testApiVersionsShareNodes() throws IOException {
+		Set<FieldsExpressionNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		collectNodes(load("compute", "v1").loadAllRootNodes(), nodes);
+		int v1NodeCount = nodes.size();
+		ResourceTreeRepository beta = load("compute", "v0.beta");
+		collectNodes(beta.loadAllRootNodes(), nodes);
+		//only the schemas that changed between versions add nodes
+		int betaOnlyNodeCount = nodes.size() - v1NodeCount;
+		assertTrue(betaOnlyNodeCount + " of " + beta.getNodeCount(), betaOnlyNodeCount < beta.getNodeCount() / 2);
+	}
+	
+}
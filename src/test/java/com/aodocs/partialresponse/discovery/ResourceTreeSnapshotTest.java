@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+
+/**
+ * Checks that the trees read from a snapshot have the same structure as the trees built from Discovery,
+ * shared nodes and cycles included.
+ */
+@RunWith(Parameterized.class)
+public class ResourceTreeSnapshotTest {
+	
+	@Parameterized.Parameters(name = "{0}/{1}")
+	public static Collection<Object[]> data() {
+		return ImmutableList.of(
+				new Object[] { "drive", "v3" },
+				new Object[] { "compute", "v1" },
+				new Object[] { "youtube", "v3" });
+	}
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	private final String api;
+	private final String version;
+	
+	public ResourceTreeSnapshotTest(String api, String version) {
+		this.api = api;
+		this.version = version;
+	}
+	
+	private String getResourceName() {
+		return "googleapis/" + api + "/" + version + "/" + api + "-api.json";
+	}
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		RestDescription restDescription;
+		try (InputStream inputStream = Resources.getResource(getResourceName()).openStream()) {
+			restDescription = Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class);
+		}
+		ResourceTreeRepository repository = ResourceTreeRepository.createEager(restDescription);
+		ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+		repository.writeSnapshot(snapshot);
+		ResourceTreeRepository snapshotRepository = ResourceTreeRepository.readSnapshot(new ByteArrayInputStream(snapshot.toByteArray()));
+		
+		TreeAssertions.assertIsomorphic(repository, snapshotRepository, restDescription.getSchemas().keySet());
+	}
+	
+	@Test
+	public void testCompiler() throws IOException {
+		Path outputDirectory = temporaryFolder.newFolder().toPath();
+		Path discoveryFile = temporaryFolder.newFile().toPath();
+		try (InputStream inputStream = Resources.getResource(getResourceName()).openStream()) {
+			Files.copy(inputStream, discoveryFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		ResourceTreeSnapshotCompiler.main(new String[] { outputDirectory.toString(), discoveryFile.toString() });
+		Path snapshotFile = outputDirectory.resolve(ResourceTreeSnapshotCompiler.getSnapshotName(api, version));
+		try (InputStream inputStream = Files.newInputStream(snapshotFile)) {
+			assertNotNull(ResourceTreeRepository.readSnapshot(inputStream));
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void testInvalidSnapshot() throws IOException {
+		ResourceTreeRepository.readSnapshot(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testTruncatedSnapshot() throws IOException {
+		ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+		ResourceTreeRepository.load(Resources.getResource(getResourceName())).writeSnapshot(snapshot);
+		byte[] truncated = Arrays.copyOf(snapshot.toByteArray(), snapshot.size() / 2);
+		ResourceTreeRepository.readSnapshot(new ByteArrayInputStream(truncated));
+	}
+	
+}
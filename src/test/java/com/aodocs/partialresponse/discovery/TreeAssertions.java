@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionNode;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compares resource trees built in different ways.
+ */
+final class TreeAssertions {
+	
+	private TreeAssertions() {
+	}
+	
+	/**
+	 * Checks that both repositories have the same trees, nodes shared in the expected repository being shared
+	 * in the same way in the actual one (including cycles).
+	 */
+	static void assertIsomorphic(ResourceTreeRepository expected, ResourceTreeRepository actual, Iterable<String> schemaNames) {
+		assertEquals(expected.getNodeCount(), actual.getNodeCount());
+		Map<FieldsExpressionNode, FieldsExpressionNode> mapping = new IdentityHashMap<>();
+		for (String schemaName : schemaNames) {
+			assertIsomorphic(expected.getResourceTree(schemaName).getRoot(), actual.getResourceTree(schemaName).getRoot(), mapping);
+		}
+	}
+	
+	private static void assertIsomorphic(FieldsExpressionNode expected, FieldsExpressionNode actual,
+			Map<FieldsExpressionNode, FieldsExpressionNode> mapping) {
+		FieldsExpressionNode mapped = mapping.putIfAbsent(expected, actual);
+		if (mapped != null) {
+			assertSame("shared nodes must stay shared", mapped, actual);
+			return;
+		}
+		Map<String, FieldsExpressionNode> expectedChildren = expected.getChildMap();
+		Map<String, FieldsExpressionNode> actualChildren = actual.getChildMap();
+		assertEquals(ImmutableList.copyOf(expectedChildren.keySet()), ImmutableList.copyOf(actualChildren.keySet()));
+		for (Map.Entry<String, FieldsExpressionNode> child : expectedChildren.entrySet()) {
+			assertIsomorphic(child.getValue(), actualChildren.get(child.getKey()), mapping);
+		}
+	}
+	
+}
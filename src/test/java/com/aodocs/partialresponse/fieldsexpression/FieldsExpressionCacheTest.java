@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class FieldsExpressionCacheTest {
+
+	@Test
+	public void testCachedInstance() {
+		FieldsExpressionCache cache = new FieldsExpressionCache(10, 100, Duration.ofMinutes(1));
+		FieldsExpression expression = cache.parse("items(id,title)");
+		assertSame(expression, cache.parse("items(id,title)"));
+		assertEquals(1, cache.stats().hitCount());
+		assertEquals(1, cache.stats().missCount());
+	}
+
+	@Test
+	public void testTooLongExpression() {
+		FieldsExpressionCache cache = new FieldsExpressionCache(10, 5, Duration.ofMinutes(1));
+		assertNotSame(cache.parse("items(id,title)"), cache.parse("items(id,title)"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEviction() {
+		FieldsExpressionCache cache = new FieldsExpressionCache(1, 100, Duration.ofMinutes(1));
+		cache.parse("a");
+		cache.parse("b");
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.stats().evictionCount());
+	}
+
+	@Test(expected = FieldExpressionParsingException.class)
+	public void testInvalidExpression() {
+		new FieldsExpressionCache(10, 100, Duration.ofMinutes(1)).parse("a,,b");
+	}
+
+}
@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class FieldsExpressionNodeTest {
+	
+	@Test
+	public void testGetChild() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("a", "b");
+		FieldsExpressionNode root = builder.getNode();
+		assertSame(root.getChild("a"), builder.getOrAddChild("a").getNode());
+		assertNull(root.getChild("c"));
+		assertEquals(2, root.getChildMap().size());
+	}
+	
+	@Test
+	public void testMergedChildrenAreReadLazily() {
+		FieldsExpressionNode.Builder referenced = FieldsExpressionNode.Builder.createRoot();
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("a");
+		builder.getOrAddChild("ref").merge(referenced.getNode());
+		FieldsExpressionNode ref = builder.getNode().getChild("ref");
+		assertTrue(ref.isLeaf());
+		
+		//children added to the merged node after the merge are visible
+		referenced.getOrAddChild("x");
+		assertFalse(ref.isLeaf());
+		assertSame(referenced.getNode().getChild("x"), ref.getChild("x"));
+		assertEquals(1, ref.getChildMap().size());
+	}
+	
+	@Test
+	public void testCyclicMerge() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("id");
+		builder.getOrAddChild("parent").merge(builder.getNode());
+		FieldsExpressionNode root = builder.getNode();
+		assertSame(root.getChild("id"), root.getChild("parent").getChild("parent").getChild("id"));
+		assertTrue(new FieldsExpressionTree(root).contains(FieldsExpression.parse("parent/parent/id").getFilterTree()));
+	}
+	
+	@Test
+	public void testResolveReferences() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("id");
+		FieldsExpressionNode.Builder parent = builder.getOrAddChild("parent");
+		parent.merge(builder.getNode());
+		parent.resolveReferences();
+		FieldsExpressionNode root = builder.getNode();
+		assertEquals(root.getChildMap().keySet(), root.getChild("parent").getChildMap().keySet());
+		assertSame(root.getChild("parent"), root.getChild("parent").getChild("parent"));
+		
+		//resolved children are not linked to the referenced node anymore
+		builder.getOrAddChild("name");
+		assertNull(root.getChild("parent").getChild("name"));
+	}
+	
+	@Test
+	public void testCatchAllChild() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("a", "b");
+		builder.merge(FieldsExpressionNode.Builder.withChildren("c").getNode());
+		builder.setCatchAllChild();
+		assertEquals(1, builder.getNode().getChildMap().size());
+		assertTrue(builder.getNode().getChild("**").isCatchAll());
+	}
+	
+	@Test
+	public void testCompact() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("b", "a", "c");
+		builder.getOrAddChild("a").getOrAddChild("x");
+		FieldsExpressionNode root = compact(builder.getNode());
+		
+		FieldsExpressionNode a = root.getChild("a");
+		assertTrue(a.matches("a"));
+		assertNull(root.getChild("d"));
+		assertNull(root.getChild("unknownNameOfCompactTest"));
+		assertEquals(ImmutableList.of("b", "a", "c"), ImmutableList.copyOf(root.getChildMap().keySet()));
+		assertEquals(1, a.getChildMap().size());
+		assertTrue(a.getChild("x").isLeaf());
+	}
+	
+	@Test
+	public void testGetChildren() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("b", "a");
+		builder.merge(FieldsExpressionNode.Builder.withChildren("c").getNode());
+		FieldsExpressionNode root = builder.getNode();
+		assertEquals(ImmutableList.of("b", "a", "c"), values(root.getChildren())); //references included
+		builder.resolveReferences();
+		FieldsExpressionNode compactRoot = compact(root);
+		assertEquals(ImmutableList.of("b", "a", "c"), values(root.getChildren()));
+		assertEquals(ImmutableList.of("b", "a", "c"), values(compactRoot.getChildren()));
+		assertSame(compactRoot.getChild("a"), ImmutableList.copyOf(compactRoot.getChildren()).get(1));
+	}
+	
+	@Test
+	public void testCompactLargeNode() {
+		List<String> names = new ArrayList<>();
+		for (int i = 40; i > 0; i--) {
+			names.add("field" + i);
+		}
+		names.add("Aa");
+		names.add("BB"); //same hash code
+		FieldsExpressionNode root = compact(FieldsExpressionNode.Builder.withChildren(names.toArray(new String[0])).getNode());
+		assertEquals(names, ImmutableList.copyOf(root.getChildMap().keySet()));
+		for (String name : names) {
+			assertTrue(root.getChild(name).matches(name));
+		}
+		assertNull(root.getChild("field0"));
+		assertNull(root.getChild("C#"));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testCompactNodesAreReadOnly() {
+		FieldsExpressionNode compactChild = compact(FieldsExpressionNode.Builder.withChildren("readOnlyTest").getNode())
+				.getChild("readOnlyTest");
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.createRoot().addChild(compactChild);
+		builder.getOrAddChild("readOnlyTest").getOrAddChild("b");
+	}
+	
+	@Test
+	public void testCompactDoesNotModifyNodes() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("a");
+		FieldsExpressionNode root = compact(builder.getNode());
+		builder.getOrAddChild("a").getOrAddChild("b");
+		assertTrue(root.getChild("a").isLeaf());
+		assertFalse(builder.getNode().getChild("a").isLeaf());
+	}
+	
+	@Test
+	public void testCompactFlags() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.createRoot();
+		builder.getOrAddBranch(Arrays.asList("map", "*", "*"));
+		builder.getOrAddBranch(Arrays.asList("object", "*", "field"));
+		builder.getOrAddChild("any").setCatchAllChild();
+		FieldsExpressionNode root = compact(builder.getNode());
+		assertTrue(root.getChild("map").isTransitiveLeaf());
+		assertFalse(root.getChild("map").isLeaf());
+		assertFalse(root.getChild("object").isTransitiveLeaf());
+		assertTrue(root.getChild("object").getChild("*").isWildcard());
+		assertTrue(root.getChild("any").getChild("**").isCatchAll());
+		assertTrue(root.getChild("any").getChild("**").isLeaf());
+		assertTrue(new FieldsExpressionTree(root).containsPath(Arrays.asList("any", "x", "y")));
+		assertTrue(new FieldsExpressionTree(root).containsPath(Arrays.asList("object", "x", "field")));
+		assertFalse(new FieldsExpressionTree(root).containsPath(Arrays.asList("object", "x", "other")));
+		//map of maps, without any leaf
+		FieldsExpressionNode.Builder wildcard = FieldsExpressionNode.Builder.createNode("*");
+		wildcard.addChild(wildcard.getNode());
+		assertFalse(compact(FieldsExpressionNode.Builder.createRoot().addChild(wildcard.getNode()).getNode()).isTransitiveLeaf());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testCompactRequiresResolvedReferences() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("id");
+		builder.getOrAddChild("parent").merge(builder.getNode());
+		compact(builder.getNode());
+	}
+	
+	private static List<String> values(Collection<FieldsExpressionNode> nodes) {
+		return nodes.stream().map(FieldsExpressionNode::getValue).collect(Collectors.toList());
+	}
+	
+	private static FieldsExpressionNode compact(FieldsExpressionNode root) {
+		return FieldsExpressionNode.Builder.compact(ImmutableMap.of("root", root)).get("root");
+	}
+	
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.aodocs.partialresponse.discovery.ResourceTreeRepositoryTest;
+
+/**
+ * Checks {@link FieldsExpression#projectOnto} on the Drive File schema.
+ */
+@RunWith(Parameterized.class)
+public class FieldsExpressionProjectionTest {
+	
+	private static final FieldsExpressionTree DRIVE_FILE = ResourceTreeRepositoryTest.getResourceFromApi("drive", "v3", "File");
+	
+	@Parameterized.Parameters(name = "{0} => {1}")
+	public static Object[][] createParams() {
+		return new Object[][] {
+				{ "id,name", "id,name" },
+				{ "owners", "owners" },
+				{ "owners/displayName", "owners/displayName" },
+				{ "owners(displayName,emailAddress),owners", "owners" },
+				{ "capabilities/*", "capabilities" },
+				{ "imageMediaMetadata/location/latitude", "imageMediaMetadata/location/latitude" },
+				//unknown paths are ignored
+				{ "unknown,id", "id" },
+				{ "id/unknown", "" },
+				//wildcards are expanded
+				//map entries named kind are selected too
+				{ "*/kind", "appProperties/kind,lastModifyingUser/kind,owners/kind,permissions/kind,properties/kind,sharingUser/kind,trashingUser/kind" },
+				{ "owners/*/unknown", "" },
+				//map entries
+				{ "appProperties", "appProperties" },
+				{ "appProperties/key", "appProperties/key" },
+				{ "appProperties/*", "appProperties" },
+		};
+	}
+	
+	private final String fieldsExpression;
+	private final String expectedProjection;
+	
+	public FieldsExpressionProjectionTest(String fieldsExpression, String expectedProjection) {
+		this.fieldsExpression = fieldsExpression;
+		this.expectedProjection = expectedProjection;
+	}
+	
+	@Test
+	public void testProjection() {
+		List<String> projection = FieldsExpression.parse(fieldsExpression).projectOnto(DRIVE_FILE).stream()
+				.map(path -> String.join("/", path))
+				.sorted()
+				.collect(Collectors.toList());
+		List<String> expected = expectedProjection.isEmpty() ? Arrays.asList() : Arrays.asList(expectedProjection.split(","));
+		Assert.assertEquals(expected, projection);
+	}
+	
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Checks that all {@link ParserType} implementations have the same behavior.
+ */
+@RunWith(Parameterized.class)
+public class ParserTypeTest {
+	
+	@Parameterized.Parameters(name = "{index}: {0}")
+	public static Collection<String> data() {
+		return ImmutableList.of(
+				//valid
+				"items", "etag,items", "context/facets/label", "items/pagemap/*", "items/pagemap/*/title",
+				"items(id)", "items/id", "items(author/uri,title)", "items(title,author/uri(a,b))",
+				"items/title,items/author/uri/a,items/author/uri/b))", "items/id,items", "*", "*/*", "**",
+				"a/*/*", "*/a/*", " a , b ", "a\t/\nb", "a (b) ", "a(b/c(d,e),f)", "a(*)", "a(b/*,c)",
+				"a.b,c-d,é", "a b", "a)", "a)b", "a(b)c", "a,b)c",
+				//invalid
+				"", " ", "\t", "\n", " \t\n",
+				"/", "/a", "a/", "a//b", "a/ /b",
+				",", ",a", "a,", "a,,b", "a, ,b",
+				"(", ")", "()", "a(", "(a", ")a", "a(b", "((", "))", "a()", "a(b,)", "a(,b)", "a/(b)"
+		);
+	}
+	
+	private final String expression;
+	
+	public ParserTypeTest(String expression) {
+		this.expression = expression;
+	}
+	
+	@Test
+	public void testSameResult() {
+		assertEquals(parse(ParserType.ANTLR), parse(ParserType.RECURSIVE_DESCENT));
+	}
+	
+	private String parse(ParserType parserType) {
+		try {
+			return parserType.parse(expression).toString();
+		} catch (FieldExpressionParsingException e) {
+			return e.getMessage();
+		}
+	}
+	
+}
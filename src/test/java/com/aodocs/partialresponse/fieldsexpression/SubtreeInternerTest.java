@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.fieldsexpression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class SubtreeInternerTest {
+	
+	@Test
+	public void testIdenticalTreesAreShared() {
+		FieldsExpressionNode first = compact(createTree("kind", "etag"));
+		FieldsExpressionNode second = compact(createTree("kind", "etag"));
+		assertSame(first, second);
+	}
+	
+	@Test
+	public void testIdenticalSubtreesAreShared() {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.createRoot();
+		builder.getOrAddChild("owner").getOrAddChild("name");
+		builder.getOrAddChild("creator").getOrAddChild("name");
+		Map<String, FieldsExpressionNode> roots = FieldsExpressionNode.Builder.compact(ImmutableMap.of(
+				"first", builder.getNode(), "second", FieldsExpressionNode.Builder.ofBranch("owner", "name").getNode()));
+		FieldsExpressionNode first = roots.get("first");
+		assertNotSame(first.getChild("owner"), first.getChild("creator")); //different values
+		assertSame(first.getChild("owner").getChild("name"), first.getChild("creator").getChild("name"));
+		assertSame(first.getChild("owner"), roots.get("second").getChild("owner"));
+	}
+	
+	@Test
+	public void testChildrenOrderIsPreserved() {
+		FieldsExpressionNode first = compact(createTree("orderTest1", "orderTest2"));
+		FieldsExpressionNode second = compact(createTree("orderTest2", "orderTest1"));
+		assertNotSame(first, second);
+		assertSame(first.getChild("orderTest1"), second.getChild("orderTest1"));
+	}
+	
+	@Test
+	public void testCyclicTreesAreShared() {
+		FieldsExpressionNode first = compact(createCyclicTree(false));
+		FieldsExpressionNode second = compact(createCyclicTree(false));
+		assertSame(first, second);
+		FieldsExpressionNode parent = first.getChild("cyclicParent");
+		assertSame(parent, parent.getChild("cyclicParent"));
+	}
+	
+	@Test
+	public void testUnrolledCyclesAreMinimized() {
+		FieldsExpressionNode unrolled = compact(createCyclicTree(true));
+		FieldsExpressionNode parent = unrolled.getChild("cyclicParent");
+		assertSame(parent, parent.getChild("cyclicParent"));
+		assertSame(unrolled, compact(createCyclicTree(false)));
+	}
+	
+	@Test
+	public void testConcurrentInterning() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<FieldsExpressionNode>> results = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				String childValue = "concurrentTest" + i % 4;
+				results.add(executor.submit(() -> compact(createTree("concurrentTest", childValue))));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertSame(results.get(i % 4).get(), results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testStats() {
+		SubtreeSharingStats before = SubtreeSharingStats.current();
+		compact(createTree("statsTest1", "statsTest2"));
+		compact(createTree("statsTest1", "statsTest2"));
+		SubtreeSharingStats after = SubtreeSharingStats.current();
+		assertEquals(6, after.getCompactedNodeCount() - before.getCompactedNodeCount());
+		assertEquals(3, after.getSharedNodeCount() - before.getSharedNodeCount());
+	}
+	
+	private static FieldsExpressionNode createTree(String... childValues) {
+		return FieldsExpressionNode.Builder.withChildren(childValues).getNode();
+	}
+	
+	/**
+	 * @param unrolled if true, the parent node is a copy of the root, with the $ref on the grand parent
+	 */
+	private static FieldsExpressionNode createCyclicTree(boolean unrolled) {
+		FieldsExpressionNode.Builder builder = FieldsExpressionNode.Builder.withChildren("cyclicId");
+		FieldsExpressionNode.Builder parent = builder.getOrAddChild("cyclicParent");
+		FieldsExpressionNode.Builder reference = parent;
+		if (unrolled) {
+			parent.getOrAddChild("cyclicId");
+			reference = parent.getOrAddChild("cyclicParent");
+		}
+		reference.merge(builder.getNode());
+		reference.resolveReferences();
+		return builder.getNode();
+	}
+	
+	private static FieldsExpressionNode compact(FieldsExpressionNode root) {
+		return FieldsExpressionNode.Builder.compact(ImmutableMap.of("root", root)).get("root");
+	}
+	
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AbstractFilteringGeneratorTest {
+	
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	
+	@Test
+	public void testSkippedSubtree() throws IOException {
+		StringWriter output = new StringWriter();
+		try (JsonGenerator generator = createGenerator(output, "a,c/d")) {
+			generator.writeStartObject();
+			generator.writeFieldName("b");
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("nested");
+			generator.writeStartObject();
+			generator.writeNumberField("a", 1);
+			generator.writeEndObject();
+			generator.writeEndArray();
+			generator.writeStringField("d", "d");
+			generator.writeEndObject();
+			generator.writeNumberField("a", 1);
+			generator.writeObjectFieldStart("c");
+			generator.writeStringField("d", "d");
+			generator.writeStringField("e", "e");
+			generator.writeEndObject();
+			generator.writeEndObject();
+		}
+		assertEquals("{\"a\":1,\"c\":{\"d\":\"d\"}}", output.toString());
+	}
+	
+	@Test
+	public void testPrimitiveArrays() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		String result = objectMapper.writer()
+				.with(new PartialResponseJsonFactory(objectMapper.getFactory(), FieldsExpression.parse("b").getFilterTree()))
+				.writeValueAsString(new Arrays());
+		assertEquals("{\"b\":[\"x\",\"y\"]}", result);
+	}
+	
+	@Test
+	public void testCopySkipsExcludedValues() throws IOException {
+		StringWriter output = new StringWriter();
+		try (JsonParser parser = JSON_FACTORY.createParser("{\"a\":{\"b\":[1,2,{\"c\":3}]},\"d\":4}");
+				JsonGenerator generator = createGenerator(output, "d")) {
+			parser.nextToken();
+			generator.copyCurrentStructure(parser);
+			assertNull(parser.nextToken());
+		}
+		assertEquals("{\"d\":4}", output.toString());
+	}
+	
+	@Test
+	public void testCounters() throws IOException {
+		FilteringCounters counters = FilteringCounters.start();
+		try {
+			StringWriter output = new StringWriter();
+			try (JsonGenerator generator = createGenerator(output, "a")) {
+				generator.writeStartObject();
+				generator.writeNumberField("a", 1);
+				generator.writeObjectFieldStart("b");
+				generator.writeNumberField("c", 2);
+				generator.writeEndObject();
+				generator.writeEndObject();
+			}
+			assertEquals("{\"a\":1}", output.toString());
+		} finally {
+			counters.stop();
+		}
+		assertEquals(4, counters.getTokensWritten());
+		assertEquals(5, counters.getTokensExcluded());
+		assertNull(FilteringCounters.current());
+	}
+	
+	private static JsonGenerator createGenerator(StringWriter output, String fieldsExpression) throws IOException {
+		return new PartialResponseJsonGenerator(JSON_FACTORY.createGenerator(output),
+				FieldsExpression.parse(fieldsExpression).getFilterTree());
+	}
+	
+	public static class Arrays {
+		
+		public int[] getA() {
+			return new int[] { 1, 2 };
+		}
+		
+		public String[] getB() {
+			return new String[] { "x", "y" };
+		}
+		
+		public long[] getC() {
+			return new long[] { 3L };
+		}
+		
+	}
+	
+}
@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+
+public class FilterAutomatonTest {
+	
+	@Test
+	public void testCompiledOncePerTree() {
+		FieldsExpressionTree tree = FieldsExpression.parse("items(id,title)").getFilterTree();
+		assertSame(FilterAutomaton.compile(tree), FilterAutomaton.compile(tree));
+	}
+	
+	@Test
+	public void testSharedStates() {
+		TokenFilter root = FilterAutomaton.compile(FieldsExpression.parse("items/*/id").getFilterTree()).getRootFilter();
+		TokenFilter items = root.includeProperty("items");
+		assertNotNull(items);
+		assertSame(items.includeProperty("a"), items.includeProperty("b"));
+		assertNull(root.includeProperty("other"));
+		assertSame(TokenFilter.INCLUDE_ALL, items.includeProperty("a").includeProperty("id").includeProperty("anything"));
+	}
+	
+	@Test
+	public void testMergedWildcardState() {
+		FilterAutomaton automaton = FilterAutomaton.compile(FieldsExpression.parse("object/A/x,object/*/y").getFilterTree());
+		TokenFilter object = automaton.getRootFilter().includeProperty("object");
+		TokenFilter a = object.includeProperty("A");
+		TokenFilter b = object.includeProperty("B");
+		assertNotNull(a.includeProperty("x"));
+		assertNotNull(a.includeProperty("y"));
+		assertNull(b.includeProperty("x"));
+		assertNotNull(b.includeProperty("y"));
+		assertSame(a.includeProperty("y"), b.includeProperty("y"));
+		//root, object, object/A (merged with object/*), object/*, x, y
+		assertEquals(6, automaton.getStateCount());
+	}
+	
+	@Test
+	public void testScalarInclusion() {
+		TokenFilter root = FilterAutomaton.compile(FieldsExpression.parse("a/*/b,c").getFilterTree()).getRootFilter();
+		assertFalse(root.includeProperty("a").includeString("value"));
+		assertTrue(root.includeProperty("a").includeProperty("any").includeString("value"));
+		assertTrue(root.includeProperty("c").includeString("value"));
+	}
+	
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JsonPointerFilterTest {
+	
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	
+	private static final String JSON = "{\"a\":{\"x\":1,\"y\":2},\"b\":[{\"x\":3},{\"x\":4,\"y\":5}],\"c\":\"c\",\"0\":0,\"d/e\":6,\"e,f\":7}";
+	
+	@Test
+	public void testCompiledOncePerExpression() {
+		assertSame(JsonPointerFilter.compile("/a/x,/b"), JsonPointerFilter.compile("/a/x,/b"));
+	}
+	
+	@Test
+	public void testSharedFilters() {
+		TokenFilter root = JsonPointerFilter.compile("/a/x");
+		assertSame(root.includeProperty("a"), root.includeProperty("a"));
+		assertSame(TokenFilter.INCLUDE_ALL, root.includeProperty("a").includeProperty("x"));
+		assertNull(root.includeProperty("b"));
+		assertFalse(root.includeProperty("a").includeString("value"));
+	}
+	
+	@Test
+	public void testArrayIndex() {
+		TokenFilter root = JsonPointerFilter.compile("/0,/00");
+		assertSame(TokenFilter.INCLUDE_ALL, root.includeElement(0));
+		assertSame(TokenFilter.INCLUDE_ALL, root.includeProperty("0"));
+		assertSame(TokenFilter.INCLUDE_ALL, root.includeProperty("00"));
+		assertFalse(root.includeElement(1).includeString("value"));
+		assertNull(root.includeElement(1).includeProperty("0"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPointer() {
+		JsonPointerFilter.compile("a,/b");
+	}
+	
+	@Test
+	public void testValidPointer() {
+		assertTrue(JsonPointerJsonFactory.isValidPointer("/a,/b/0"));
+		assertTrue(JsonPointerJsonFactory.isValidPointer("/a,")); //property "a,"
+		assertFalse(JsonPointerJsonFactory.isValidPointer("a"));
+		assertFalse(JsonPointerJsonFactory.isValidPointer("a,/b"));
+	}
+	
+	@Test
+	public void testPropertyNameWithComma() throws IOException {
+		assertFiltered("/e,f", "{\"e,f\":7}");
+		assertFiltered("/e,/c", "{\"c\":\"c\"}");
+	}
+	
+	@Test
+	public void testSinglePointer() throws IOException {
+		assertFiltered("/a/x", "{\"a\":{\"x\":1}}");
+		assertFiltered("/b/1/y", "{\"b\":[{\"y\":5}]}");
+		assertFiltered("/0", "{\"0\":0}");
+		assertFiltered("/d~1e", "{\"d/e\":6}");
+		assertFiltered("/unknown", "{}");
+	}
+	
+	@Test
+	public void testUnion() throws IOException {
+		assertFiltered("/a/x,/c", "{\"a\":{\"x\":1},\"c\":\"c\"}");
+		assertFiltered("/a/x,/a/y", "{\"a\":{\"x\":1,\"y\":2}}");
+		assertFiltered("/b/0,/b/1/y", "{\"b\":[{\"x\":3},{\"y\":5}]}");
+		assertFiltered("/a,/a/x", "{\"a\":{\"x\":1,\"y\":2}}");
+		assertFiltered("/unknown,/c", "{\"c\":\"c\"}");
+	}
+	
+	@Test
+	public void testFilterReused() {
+		assertSame(JsonPointerFilter.compile("/a,/b"), JsonPointerFilter.compile("/a,/b"));
+	}
+	
+	private static void assertFiltered(String jsonPointer, String expected) throws IOException {
+		JsonNode node = OBJECT_MAPPER.readTree(JSON);
+		String result = OBJECT_MAPPER.writer()
+				.with(new JsonPointerJsonFactory(OBJECT_MAPPER.getFactory(), jsonPointer))
+				.writeValueAsString(node);
+		assertEquals(expected, result);
+	}
+	
+}
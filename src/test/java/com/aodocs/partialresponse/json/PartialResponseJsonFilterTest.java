@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpressionTree;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.google.common.io.Resources;
+
+/**
+ * Checks that {@link PartialResponseJsonFilter} produces the same output as a full copy
+ * through a {@link PartialResponseJsonGenerator}.
+ */
+@RunWith(Parameterized.class)
+public class PartialResponseJsonFilterTest {
+	
+	private static final JsonFactory FACTORY = new JsonFactory();
+	
+	@Parameterized.Parameters(name = "{index}: {0}")
+	public static Object[] createParams() {
+		return new Object[] {
+				"id", "*", "object", "object/A", "object/*", "nestedObjects/*/B", "nestedObjects(object1/A,object2)",
+				"array", "arrayOfArrays", "arrayOfObjects/B", "arrayOfObjects(A,C)", "nullable,float,boolean",
+				"doesnotexist", "object/A/something", "text,object(A),nestedObjects/object1/*"
+		};
+	}
+	
+	private final FieldsExpressionTree filterTree;
+	private final byte[] input;
+	
+	public PartialResponseJsonFilterTest(String fieldsExpression) throws IOException {
+		this.filterTree = FieldsExpression.parse(fieldsExpression).getFilterTree();
+		this.input = Resources.toByteArray(Resources.getResource("testinput.json"));
+	}
+	
+	private String copyThroughGenerator() throws IOException {
+		StringWriter output = new StringWriter();
+		new PartialJsonCopier(FACTORY.createParser(input), FACTORY.createGenerator(output), filterTree).copyAndClose();
+		return output.toString();
+	}
+	
+	@Test
+	public void testByteArray() throws IOException {
+		byte[] filtered = new PartialResponseJsonFilter(filterTree).filter(input);
+		assertEquals(copyThroughGenerator(), new String(filtered, StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testStream() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new PartialResponseJsonFilter(FACTORY, filterTree).filter(new ByteArrayInputStream(input), output);
+		assertEquals(copyThroughGenerator(), new String(output.toByteArray(), StandardCharsets.UTF_8));
+	}
+	
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+public class PartialResponseSerializerModifierTest {
+	
+	private static final AtomicInteger A_CALLS = new AtomicInteger();
+	private static final AtomicInteger B_CALLS = new AtomicInteger();
+	private static final AtomicInteger CHILDREN_CALLS = new AtomicInteger();
+	
+	@Before
+	public void resetCalls() {
+		A_CALLS.set(0);
+		B_CALLS.set(0);
+		CHILDREN_CALLS.set(0);
+	}
+	
+	@Test
+	public void testRegisteredModifier() throws IOException {
+		ObjectMapper mapper = new ObjectMapper().registerModule(
+				new SimpleModule().setSerializerModifier(new PartialResponseSerializerModifier()));
+		Assert.assertEquals("{\"b\":\"b\"}", write(mapper.writer(), "b"));
+		Assert.assertEquals(0, A_CALLS.get());
+		Assert.assertEquals(1, B_CALLS.get());
+		Assert.assertEquals(0, CHILDREN_CALLS.get());
+	}
+	
+	@Test
+	public void testSkipExcludedProperties() throws IOException {
+		ObjectWriter writer = PartialResponseSerializerModifier.skipExcludedProperties(new ObjectMapper().writer());
+		Assert.assertEquals("{\"children\":[{\"a\":\"a\"},{\"a\":\"a\"}]}", write(writer, "children/a"));
+		Assert.assertEquals(2, A_CALLS.get());
+		Assert.assertEquals(0, B_CALLS.get());
+		Assert.assertEquals(1, CHILDREN_CALLS.get());
+	}
+	
+	@Test
+	public void testWildcard() throws IOException {
+		ObjectWriter writer = PartialResponseSerializerModifier.skipExcludedProperties(new ObjectMapper().writer());
+		//middle wildcards also include scalar values
+		Assert.assertEquals("{\"a\":\"a\",\"b\":\"b\",\"children\":[{\"b\":\"b\"},{\"b\":\"b\"}]}", write(writer, "*/b"));
+		Assert.assertEquals(1, A_CALLS.get());
+		Assert.assertEquals(3, B_CALLS.get());
+		Assert.assertEquals(1, CHILDREN_CALLS.get());
+	}
+	
+	@Test
+	public void testIncludeAll() throws IOException {
+		ObjectWriter writer = PartialResponseSerializerModifier.skipExcludedProperties(new ObjectMapper().writer());
+		Assert.assertEquals("{\"a\":\"a\",\"b\":\"b\",\"children\":[{\"a\":\"a\",\"b\":\"b\",\"children\":[]},"
+				+ "{\"a\":\"a\",\"b\":\"b\",\"children\":[]}]}", write(writer, "*"));
+		Assert.assertEquals(3, A_CALLS.get());
+		Assert.assertEquals(3, B_CALLS.get());
+		Assert.assertEquals(3, CHILDREN_CALLS.get());
+	}
+	
+	@Test
+	public void testBaseMapperNotModified() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		Assert.assertEquals("{\"b\":\"b\"}",
+				write(PartialResponseSerializerModifier.skipExcludedProperties(mapper.writer()), "b"));
+		Assert.assertEquals(0, A_CALLS.get());
+		Assert.assertEquals("{\"b\":\"b\"}", write(mapper.writer(), "b"));
+		Assert.assertEquals(3, A_CALLS.get());
+	}
+	
+	@Test
+	public void testUnfilteredGenerator() throws IOException {
+		ObjectWriter writer = PartialResponseSerializerModifier.skipExcludedProperties(new ObjectMapper().writer());
+		Assert.assertEquals("{\"a\":\"a\",\"b\":\"b\",\"children\":[]}", writer.writeValueAsString(new Bean(false)));
+		Assert.assertEquals(1, A_CALLS.get());
+	}
+	
+	@Test
+	public void testJsonPointer() throws IOException {
+		ObjectWriter writer = PartialResponseSerializerModifier.skipExcludedProperties(new ObjectMapper().writer());
+		writer = writer.with(new JsonPointerJsonFactory(writer.getFactory(), "/b"));
+		Assert.assertEquals("{\"b\":\"b\"}", writer.writeValueAsString(new Bean(true)));
+		Assert.assertEquals(0, A_CALLS.get());
+		Assert.assertEquals(1, B_CALLS.get());
+		Assert.assertEquals(0, CHILDREN_CALLS.get());
+	}
+	
+	private static String write(ObjectWriter writer, String fieldsExpression) throws IOException {
+		return writer.with(new PartialResponseJsonFactory(writer.getFactory(),
+				FieldsExpression.parse(fieldsExpression).getFilterTree()))
+				.writeValueAsString(new Bean(true));
+	}
+	
+	@JsonPropertyOrder({ "a", "b", "children" })
+	public static class Bean {
+		
+		private final boolean hasChildren;
+		
+		Bean(boolean hasChildren) {
+			this.hasChildren = hasChildren;
+		}
+		
+		public String getA() {
+			A_CALLS.incrementAndGet();
+			return "a";
+		}
+		
+		public String getB() {
+			B_CALLS.incrementAndGet();
+			return "b";
+		}
+		
+		public List<Bean> getChildren() {
+			CHILDREN_CALLS.incrementAndGet();
+			return hasChildren ? Arrays.asList(new Bean(false), new Bean(false)) : Arrays.asList();
+		}
+		
+	}
+	
+}
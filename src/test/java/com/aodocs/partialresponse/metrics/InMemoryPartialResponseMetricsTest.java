@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+public class InMemoryPartialResponseMetricsTest {
+	
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (long value = 1; value <= 100; value++) {
+			histogram.record(value);
+		}
+		histogram.record(-1);
+		assertEquals(101, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+	}
+	
+	@Test
+	public void testMethodMetrics() {
+		InMemoryPartialResponseMetrics metrics = new InMemoryPartialResponseMetrics();
+		assertNull(metrics.getMethodMetrics("test"));
+		metrics.expressionParsed("test", 10);
+		metrics.expressionValidated("test", 20);
+		metrics.responseFiltered("test", new FilteredResponseStats(100, 10, 40, 3, 7));
+		metrics.responseFiltered("test", new FilteredResponseStats(100, 30, -1, 5, 0));
+		InMemoryPartialResponseMetrics.MethodMetrics methodMetrics = metrics.getMethodMetrics("test");
+		assertEquals(1, methodMetrics.getParseNanos().getCount());
+		assertEquals(20, methodMetrics.getValidationNanos().getSum());
+		assertEquals(2, methodMetrics.getFilterNanos().getCount());
+		assertEquals(40, methodMetrics.getBytesWritten().getSum());
+		assertEquals(0.75, methodMetrics.getSavedBytesRatio(), 0);
+		assertEquals(8, methodMetrics.getTokensWritten());
+		assertEquals(7, methodMetrics.getTokensExcluded());
+	}
+	
+	@Test
+	public void testRejectedExpressions() {
+		InMemoryPartialResponseMetrics metrics = new InMemoryPartialResponseMetrics();
+		for (int i = 0; i < 12; i++) {
+			metrics.expressionRejected("test", "a" + i);
+		}
+		InMemoryPartialResponseMetrics.MethodMetrics methodMetrics = metrics.getMethodMetrics("test");
+		assertEquals(12, methodMetrics.getRejectedCount());
+		assertEquals(10, methodMetrics.getLastRejectedExpressions().size());
+		assertEquals("a2", methodMetrics.getLastRejectedExpressions().get(0));
+		assertTrue(Double.isNaN(methodMetrics.getSavedBytesRatio()));
+	}
+	
+	@Test
+	public void testDump() {
+		InMemoryPartialResponseMetrics metrics = new InMemoryPartialResponseMetrics();
+		metrics.registerCache("test", () -> new CacheStats(1, 2, 0, 0, 0, 0));
+		metrics.expressionRejected("test.get", "a/");
+		String report = metrics.dump();
+		assertTrue(report, report.startsWith("cache test: CacheStats{hitCount=1, missCount=2"));
+		assertTrue(report, report.contains("method test.get rejected: count=1 last=" + ImmutableList.of("a/")));
+	}
+	
+}
@@ -39,6 +39,9 @@ import javax.servlet.http.HttpServletResponse;
 
 public abstract class BaseEndpointsServletTest {
 	
+	protected HttpServletRequest lastRequest;
+	protected HttpServletResponse lastResponse;
+	
 	void assertSpaceInsensitiveEquals(String expected, String actual) {
 		assertEquals(expected.replaceAll("\\s+", ""), actual.replaceAll("\\s+", ""));
 	}
@@ -63,8 +66,10 @@ public abstract class BaseEndpointsServletTest {
 		}
 		when(request.getMethod()).thenReturn("GET");
 		when(request.getRequestURI()).thenReturn("test/v1/test");
+		lastRequest = request;
 		
 		HttpServletResponse response = mock(HttpServletResponse.class);
+		lastResponse = response;
 		StringWriter stringWriter = new StringWriter();
 		when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
 		when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
@@ -51,6 +51,8 @@ public class JsonPointerEndpointsServletTest extends BaseEndpointsServletTest {
 		checkJsonPointer("/object", "{\"object\":{\"integer\":2,\"string\":\"b\"}}");
 		checkJsonPointer("/object/integer", "{\"object\":{\"integer\":2}}");
 		checkJsonPointer("/object/string", "{\"object\":{\"string\":\"b\"}}");
+		checkJsonPointer("/integer,/object/string", "{\"integer\":1,\"object\":{\"string\":\"b\"}}");
+		checkJsonPointer("/array/1,/object/integer", "{\"array\":[\"1\"],\"object\":{\"integer\":2}}");
 	}
 	
 	private void checkJsonPointer(String jsonPointer, String expected) throws JsonProcessingException {
@@ -74,6 +76,21 @@ public class JsonPointerEndpointsServletTest extends BaseEndpointsServletTest {
 		assertSpaceInsensitiveEquals("{}", response);
 	}
 	
+	@Test
+	public void testUnionResponse() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(ENABLE_JSON_PATH, TestApi.class);
+		String response = serve(servlet, "/integer,/string", 200);
+		assertSpaceInsensitiveEquals("{\"integer\":1,\"string\":\"a\"}", response);
+	}
+	
+	@Test
+	public void testPropertyNameWithComma() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(ENABLE_JSON_PATH, TestApi.class);
+		//a single pointer to the "integer,string" property
+		String response = serve(servlet, "/integer,string", 200);
+		assertSpaceInsensitiveEquals("{}", response);
+	}
+	
 	@Test
 	public void testLeafResponse() throws IOException, ServletException {
 		PartialResponseEndpointsServlet servlet = initServlet(ENABLE_JSON_PATH, TestApi.class);
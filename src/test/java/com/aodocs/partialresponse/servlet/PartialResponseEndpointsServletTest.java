@@ -19,16 +19,46 @@
  */
 package com.aodocs.partialresponse.servlet;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.CHECK_FIELDS_EXPRESSION_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.METRICS_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.METRICS_UNFILTERED_SIZE_SAMPLING_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.RESOURCE_TREE_CACHE_MAX_NODES_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.RESOURCE_TREE_SNAPSHOT_PATH_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.SKIP_EXCLUDED_PROPERTIES_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.STREAMING_FLUSH_THRESHOLD_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.WARM_UP_IN_BACKGROUND_INIT_PARAM;
+import static com.aodocs.partialresponse.servlet.PartialResponseEndpointsServlet.WARM_UP_RESOURCE_TREES_INIT_PARAM;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.aodocs.partialresponse.discovery.ResourceTreeRepository;
+import com.aodocs.partialresponse.metrics.InMemoryPartialResponseMetrics;
+import com.aodocs.partialresponse.metrics.PartialResponseMetrics;
+import com.google.api.client.googleapis.util.Utils;
+import com.google.api.services.discovery.model.RestDescription;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
 
 public class PartialResponseEndpointsServletTest extends BaseEndpointsServletTest {
 	
@@ -68,4 +98,191 @@ public class PartialResponseEndpointsServletTest extends BaseEndpointsServletTes
 		assertTrue(response.contains("Invalid field selection"));
 	}
 	
+	@Test
+	public void testCachedValidation() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.singletonMap(CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true"), TestApi.class);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(serve(servlet, "a,c", 400).contains("Invalid field selection"));
+			assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+		}
+		assertEquals(2, servlet.getValidationCacheStats().missCount());
+		assertEquals(4, servlet.getValidationCacheStats().hitCount());
+	}
+	
+	@Test
+	public void testCachedFilteringWriter() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.emptyMap(), TestApi.class);
+		for (int i = 0; i < 3; i++) {
+			assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+			assertSpaceInsensitiveEquals("{\"string\":\"a\"}", serve(servlet, "string", 200));
+		}
+		assertEquals(2, servlet.getFilteringWriterCacheStats().missCount());
+		assertEquals(4, servlet.getFilteringWriterCacheStats().hitCount());
+	}
+	
+	@Test
+	public void testContentLength() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.singletonMap("addContentLength", "true"), TestApi.class);
+		String response = serve(servlet, "integer", 200);
+		assertSpaceInsensitiveEquals("{\"integer\":1}", response);
+		verify(lastResponse).setContentLength(response.length());
+	}
+	
+	@Test
+	public void testStreamingFlush() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.singletonMap(STREAMING_FLUSH_THRESHOLD_INIT_PARAM, "1"), TestApi.class);
+		assertSpaceInsensitiveEquals("{\"array\":[\"0\",\"1\"]}", serve(servlet, "array", 200));
+		verify(lastResponse, never()).setContentLength(anyInt());
+	}
+	
+	@Test
+	public void testMetrics() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				SKIP_EXCLUDED_PROPERTIES_INIT_PARAM, "false",
+				METRICS_INIT_PARAM, "inMemory",
+				METRICS_UNFILTERED_SIZE_SAMPLING_INIT_PARAM, "1"), TestApi.class);
+		String response = serve(servlet, "integer", 200);
+		serve(servlet, "a,c", 400);
+		serve(servlet, "a(", 503); //parsing errors are not mapped to bad requests
+		InMemoryPartialResponseMetrics.MethodMetrics methodMetrics
+				= ((InMemoryPartialResponseMetrics) servlet.getMetrics()).getMethodMetrics("test.get");
+		assertEquals(2, methodMetrics.getParseNanos().getCount());
+		assertEquals(2, methodMetrics.getValidationNanos().getCount());
+		assertEquals(1, methodMetrics.getFilterNanos().getCount());
+		assertEquals(response.length(), methodMetrics.getBytesWritten().getSum());
+		assertTrue(methodMetrics.getSavedBytesRatio() > 0.5);
+		assertEquals(4, methodMetrics.getTokensWritten());
+		assertEquals(14, methodMetrics.getTokensExcluded());
+		assertEquals(ImmutableList.of("a,c", "a("), methodMetrics.getLastRejectedExpressions());
+	}
+	
+	@Test
+	public void testErrorNotRecordedAsFiltered() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.singletonMap(
+				METRICS_INIT_PARAM, "inMemory"), FailingTestApi.class);
+		serve(servlet, "integer", 404);
+		InMemoryPartialResponseMetrics.MethodMetrics methodMetrics
+				= ((InMemoryPartialResponseMetrics) servlet.getMetrics()).getMethodMetrics("test.get");
+		assertEquals(1, methodMetrics.getParseNanos().getCount());
+		assertEquals(0, methodMetrics.getFilterNanos().getCount());
+		assertEquals(0, methodMetrics.getBytesWritten().getCount());
+	}
+	
+	@Test
+	public void testNoMetrics() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.emptyMap(), TestApi.class);
+		assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+		assertEquals(PartialResponseMetrics.NO_OP, servlet.getMetrics());
+	}
+	
+	@Test
+	public void testResourceTreeCache() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				RESOURCE_TREE_CACHE_MAX_NODES_INIT_PARAM, "1"), TestApi.class);
+		for (int i = 0; i < 2; i++) {
+			assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+			assertTrue(serve(servlet, "a,c", 400).contains("Invalid field selection"));
+		}
+		//the repository is too heavy to be kept, it is loaded again for each validation cache miss
+		assertEquals(2, servlet.getResourceTreeCacheStats().loadCount());
+		assertEquals(2, servlet.getResourceTreeCacheStats().evictionCount());
+	}
+	
+	@Test
+	public void testResourceTreeCacheKeepsLargeRepository() throws IOException {
+		ResourceTreeRepository repository;
+		try (InputStream inputStream = Resources.getResource("googleapis/drive/v3/drive-api.json").openStream()) {
+			repository = ResourceTreeRepository.createEager(
+					Utils.getDefaultJsonFactory().createJsonParser(inputStream).parse(RestDescription.class));
+		}
+		int nodeCount = repository.getNodeCount();
+		Cache<String, ResourceTreeRepository> cache = PartialResponseEndpointsServlet.<String>newResourceTreeCacheBuilder(
+				nodeCount + 1).build();
+		cache.put("drive", repository);
+		assertEquals(repository, cache.getIfPresent("drive")); //not limited to a segment share of the maximum
+		cache = PartialResponseEndpointsServlet.<String>newResourceTreeCacheBuilder(nodeCount - 1).build();
+		cache.put("drive", repository);
+		assertNull(cache.getIfPresent("drive"));
+	}
+	
+	@Test
+	public void testResourceTreeSharingStats() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.singletonMap(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true"), TestApi.class);
+		long compactedNodeCount = servlet.getResourceTreeSharingStats().getCompactedNodeCount();
+		serve(servlet, "integer", 200);
+		assertTrue(servlet.getResourceTreeSharingStats().getCompactedNodeCount() > compactedNodeCount);
+	}
+	
+	@Test
+	public void testResourceTreeSnapshot() throws IOException, ServletException {
+		//the snapshot only has the "integer" field
+		PartialResponseEndpointsServlet servlet = initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				RESOURCE_TREE_SNAPSHOT_PATH_INIT_PARAM, "snapshots/"), TestApi.class);
+		assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+		assertTrue(serve(servlet, "string", 400).contains("Invalid field selection"));
+		assertSpaceInsensitiveEquals("{\"string\":\"a\"}", serve(initServlet(Collections.singletonMap(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true"), TestApi.class), "string", 200));
+	}
+	
+	@Test
+	public void testRequestedProjection() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(Collections.emptyMap(), TestApi.class);
+		serve(servlet, "*/integer,array,unknown", 200);
+		ArgumentCaptor<Object> projection = ArgumentCaptor.forClass(Object.class);
+		verify(lastRequest).setAttribute(eq(PartialResponseEndpointsServlet.REQUESTED_PROJECTION_ATTR_NAME), projection.capture());
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getAttribute(PartialResponseEndpointsServlet.REQUESTED_PROJECTION_ATTR_NAME)).thenReturn(projection.getValue());
+		assertEquals(ImmutableList.of(ImmutableList.of("object", "integer"), ImmutableList.of("array")),
+				PartialResponseEndpointsServlet.getRequestedProjection(request));
+	}
+	
+	@Test
+	public void testWarmUp() throws IOException, ServletException {
+		PartialResponseEndpointsServlet servlet = initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				WARM_UP_RESOURCE_TREES_INIT_PARAM, "true"), TestApi.class);
+		assertTrue(servlet.isWarmedUp());
+		assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+		assertTrue(serve(servlet, "a,c", 400).contains("Invalid field selection"));
+	}
+	
+	@Test
+	public void testBackgroundWarmUp() throws IOException, ServletException, InterruptedException {
+		PartialResponseEndpointsServlet servlet = initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				WARM_UP_RESOURCE_TREES_INIT_PARAM, "true",
+				WARM_UP_IN_BACKGROUND_INIT_PARAM, "true"), TestApi.class);
+		for (int i = 0; i < 100 && !servlet.isWarmedUp(); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(servlet.isWarmedUp());
+		assertSpaceInsensitiveEquals("{\"integer\":1}", serve(servlet, "integer", 200));
+	}
+	
+	@Test(expected = ServletException.class)
+	public void testFailedWarmUp() throws ServletException {
+		initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				WARM_UP_RESOURCE_TREES_INIT_PARAM, "true",
+				RESOURCE_TREE_SNAPSHOT_PATH_INIT_PARAM, "corruptSnapshots/"), TestApi.class);
+	}
+	
+	@Test
+	public void testFailedBackgroundWarmUp() throws ServletException, InterruptedException {
+		PartialResponseEndpointsServlet servlet = initServlet(ImmutableMap.of(
+				CHECK_FIELDS_EXPRESSION_INIT_PARAM, "true",
+				WARM_UP_RESOURCE_TREES_INIT_PARAM, "true",
+				WARM_UP_IN_BACKGROUND_INIT_PARAM, "true",
+				RESOURCE_TREE_SNAPSHOT_PATH_INIT_PARAM, "corruptSnapshots/"), TestApi.class);
+		for (int i = 0; i < 100 && !servlet.isWarmUpFailed(); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(servlet.isWarmUpFailed());
+		assertFalse(servlet.isWarmedUp());
+	}
+	
 }
@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.servlet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class PeriodicFlushOutputStreamTest {
+	
+	@Test
+	public void testFlushEveryThreshold() throws IOException {
+		FlushCountingOutputStream target = new FlushCountingOutputStream();
+		PeriodicFlushOutputStream output = new PeriodicFlushOutputStream(target, 10);
+		output.write(new byte[6], 0, 6);
+		assertEquals(0, target.flushCount);
+		output.write(new byte[6], 0, 6);
+		assertEquals(1, target.flushCount);
+		for (int i = 0; i < 9; i++) {
+			output.write(i);
+		}
+		assertEquals(1, target.flushCount);
+		output.write(9);
+		assertEquals(2, target.flushCount);
+		assertEquals(22, target.size());
+	}
+	
+	private static class FlushCountingOutputStream extends ByteArrayOutputStream {
+		
+		private int flushCount;
+		
+		@Override
+		public void flush() {
+			flushCount++;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * Partial response support for Cloud Endpoints v2
+ * ---
+ * Copyright (C) 2018 AODocs (Altirnao Inc)
+ * ---
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.aodocs.partialresponse.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.aodocs.partialresponse.fieldsexpression.FieldsExpression;
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import org.junit.Test;
+
+public class RequestedFieldsImplBatchTest {
+
+  private static RequestedFields requestedFields(String fieldsExpression) {
+    return new RequestedFieldsImpl(FieldsExpression.parse(fieldsExpression));
+  }
+
+  @Test
+  public void requestedAmong() {
+    BitSet requested = requestedFields("id,owner(name),items/*/title")
+        .requestedAmong(Arrays.asList("id", "title", "owner/name", "owner/email", "items/a/title", "items"));
+    assertEquals(BitSet.valueOf(new long[] { 0b110101 }), requested);
+  }
+
+  @Test
+  public void childrenRequested() {
+    RequestedFields requestedFields = requestedFields("id,owner(name,email),items/*/title");
+    assertEquals(ImmutableSet.of("id", "owner", "items"), requestedFields.childrenRequested());
+    assertFalse(requestedFields.allChildrenRequested());
+    assertEquals(ImmutableSet.of("name", "email"), requestedFields.startingFrom("owner").childrenRequested());
+    assertTrue(requestedFields.startingFrom("items").allChildrenRequested());
+    assertEquals(ImmutableSet.of("title"), requestedFields.startingFrom("items/a").childrenRequested());
+  }
+
+  @Test
+  public void childrenRequestedBelowLeaf() {
+    RequestedFields owner = requestedFields("owner").startingFrom("owner");
+    assertTrue(owner.allChildrenRequested());
+    assertEquals(Collections.emptySet(), owner.childrenRequested());
+  }
+
+  @Test
+  public void nothingRequested() {
+    RequestedFields unknown = requestedFields("owner").startingFrom("unknown");
+    assertFalse(unknown.allChildrenRequested());
+    assertEquals(Collections.emptySet(), unknown.childrenRequested());
+  }
+
+  @Test
+  public void defaultMethods() {
+    //an implementation written before the batch and child enumeration methods
+    RequestedFields requestedFields = new RequestedFields() {
+      @Override
+      public boolean isRequested(String fieldPath) {
+        return fieldPath.startsWith("owner");
+      }
+
+      @Override
+      public RequestedFields startingFrom(String newRootPath) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    assertTrue(requestedFields.isRequested(Arrays.asList("owner", "name")));
+    assertEquals(BitSet.valueOf(new long[] { 0b01 }), requestedFields.requestedAmong(Arrays.asList("owner", "id")));
+    assertTrue(requestedFields.allChildrenRequested());
+    assertEquals(Collections.emptySet(), requestedFields.childrenRequested());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidSplitPath() {
+    requestedFields("owner").isRequested(Arrays.asList("owner", "a/b"));
+  }
+
+}
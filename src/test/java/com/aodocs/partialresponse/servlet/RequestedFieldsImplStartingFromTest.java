@@ -41,6 +41,14 @@ public class RequestedFieldsImplStartingFromTest {
         {"foo/bar", "foo", "baz", false},
         {"foo/bar/baz", "foo/bar", "baz", true},
         {"foo/bar/baz", "foo/bar", "bar", false},
+        {"foo", "foo/bar", "baz", true},
+        //wildcards
+        {"foo/*/bar", "foo/baz", "bar", true},
+        {"foo/*/bar", "foo/baz", "baz", false},
+        {"foo/*/bar,foo/baz/qux", "foo/baz", "qux", true},
+        {"*/b/c,a/*/d", "a/b", "c", true},
+        {"*/b/c,a/*/d", "a/b", "d", true},
+        {"*/b/c,a/*/d", "a/b", "e", false},
         //canonical usage
         {"items/fieldName", "items", "fieldName", true},
     });
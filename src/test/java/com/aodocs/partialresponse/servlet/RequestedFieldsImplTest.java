@@ -98,4 +98,12 @@ public class RequestedFieldsImplTest {
     assertEquals(expectedIsRequested, isRequested);
   }
 
+  @Test
+  public void isRequestedSplitPath() {
+    FieldsExpression fieldsExpression = FieldsExpression.parse(this.fieldsExpression);
+    boolean isRequested = new RequestedFieldsImpl(fieldsExpression)
+        .isRequested(Arrays.asList(fieldPathToCheck.split("/")));
+    assertEquals(expectedIsRequested, isRequested);
+  }
+
 }
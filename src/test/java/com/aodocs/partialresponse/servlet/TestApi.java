@@ -30,6 +30,10 @@ public class TestApi {
 				new TestResource(2, "b"));
 	}
 	
+	public void delete() {
+		//no response, skipped by the warm-up
+	}
+	
 	public static class TestResource {
 		@JsonProperty
 		private final Integer integer;